@@ -0,0 +1,51 @@
+package com.hapidzfadli.hflix.benchmark;
+
+import com.hapidzfadli.hflix.config.JwtProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared test data mirroring the values in application.properties.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static JwtProperties jwtProperties() {
+        JwtProperties properties = new JwtProperties();
+        properties.setSecret("a_very_long_and_secure_jwt_secret_key_that_should_be_at_least_256_bits_long_for_production_use");
+        properties.setHeaderName("Authorization");
+        properties.setExpirationsMs(86400000L);
+        properties.setTokenPrefix("Bearer");
+        properties.setIssuer("hflix");
+        return properties;
+    }
+
+    static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        user.setEmail("user" + id + "@hflix.dev");
+        user.setPassword("$2a$12$abcdefghijklmnopqrstuuN0l9mQWm1mCUyN5bwYUO4lQ3z5p0e6");
+        user.setFullName("Benchmark User " + id);
+        user.setRole(User.Role.USER);
+        user.setStatus(User.Status.ACTIVE);
+        user.setProfilePicture("https://cdn.hflix.dev/avatars/" + id + ".png");
+        user.setCreatedAt(LocalDateTime.of(2025, 1, 1, 12, 0));
+        user.setUpdatedAt(LocalDateTime.of(2025, 3, 1, 12, 0));
+        user.setLastLogin(LocalDateTime.of(2025, 3, 10, 8, 30));
+        return user;
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            users.add(user(i));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,64 @@
+package com.hapidzfadli.hflix.benchmark;
+
+import com.hapidzfadli.hflix.app.service.impl.JwtTokenProvider;
+import com.hapidzfadli.hflix.config.JwtAuthenticationFilter;
+import com.hapidzfadli.hflix.config.JwtProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+    private String headerName;
+
+    @Setup
+    public void setup() {
+        JwtProperties properties = Fixtures.jwtProperties();
+        JwtTokenProvider tokenProvider = new JwtTokenProvider(properties);
+
+        filter = new JwtAuthenticationFilter(tokenProvider, properties, new SimpleMeterRegistry());
+        headerName = properties.getHeaderName();
+        authorizationHeader = properties.getTokenPrefix() + " " + tokenProvider.generateToken(Fixtures.user(42));
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse authenticatedRequest() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/42");
+        request.addHeader(headerName, authorizationHeader);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, NO_OP_CHAIN);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse anonymousRequest() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/public/videos");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, NO_OP_CHAIN);
+        return response;
+    }
+}
@@ -0,0 +1,46 @@
+package com.hapidzfadli.hflix.benchmark;
+
+import com.hapidzfadli.hflix.app.service.impl.JwtTokenProvider;
+import com.hapidzfadli.hflix.domain.entity.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private JwtTokenProvider tokenProvider;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setup() {
+        tokenProvider = new JwtTokenProvider(Fixtures.jwtProperties());
+        user = Fixtures.user(42);
+        token = tokenProvider.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenProvider.generateToken(user);
+    }
+
+    // full signature check and claim extraction, no cache
+    @Benchmark
+    public Optional<Authentication> verifyToken() {
+        return tokenProvider.getAuthentication(token);
+    }
+
+    // the path the filter takes for a token it has already seen
+    @Benchmark
+    public Optional<Authentication> authenticateCached() {
+        return tokenProvider.authenticate(token);
+    }
+}
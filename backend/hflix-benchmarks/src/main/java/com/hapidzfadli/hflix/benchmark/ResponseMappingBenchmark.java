@@ -0,0 +1,59 @@
+package com.hapidzfadli.hflix.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.api.dto.UserDTO;
+import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import com.hapidzfadli.hflix.domain.entity.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseMappingBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private User user;
+    private List<User> users;
+    private WebResponseDTO<List<UserDTO>> pageResponse;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        user = Fixtures.user(42);
+        users = Fixtures.users(pageSize);
+        pageResponse = WebResponseDTO.success(users.stream().map(UserDTO::fromUser).collect(Collectors.toList()));
+        // same defaults Spring Boot applies to the mapper behind the message converters
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public UserDTO userDtoFromUser() {
+        return UserDTO.fromUser(user);
+    }
+
+    @Benchmark
+    public WebResponseDTO<UserDTO> webResponseSuccess() {
+        return WebResponseDTO.success(UserDTO.fromUser(user));
+    }
+
+    @Benchmark
+    public WebResponseDTO<List<UserDTO>> mapPage() {
+        return WebResponseDTO.success(users.stream().map(UserDTO::fromUser).collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(pageResponse);
+    }
+}
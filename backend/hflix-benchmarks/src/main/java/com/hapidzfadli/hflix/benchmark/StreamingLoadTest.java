@@ -0,0 +1,207 @@
+package com.hapidzfadli.hflix.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for a running server, comparing the platform and virtual thread execution
+ * modes. {@code clients} viewers stream {@code url} at {@code rate} bytes per second over
+ * sockets with a small receive buffer, so the server blocks writing to them like it does
+ * for viewers on slow links. Meanwhile a probe requests {@code probe-url} every
+ * {@code probe-interval} and the report gives its latency: requests that queue behind the
+ * slow viewers show up there.
+ * <p>
+ * {@code java -cp benchmarks.jar com.hapidzfadli.hflix.benchmark.StreamingLoadTest
+ * url=http://host:8080/api/api/videos/1/stream/720p.mp4 probe-url=... clients=400
+ * rate=16384 duration=60s header="Authorization: Bearer ..."}
+ */
+public class StreamingLoadTest {
+
+    private static final int RECEIVE_BUFFER = 4096;
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final int STALL_TIMEOUT_MS = 30_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        URI url = URI.create(required(options, "url"));
+        URI probeUrl = URI.create(options.getOrDefault("probe-url", url.toString()));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "400"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "16384"));
+        Duration duration = duration(options.getOrDefault("duration", "60s"));
+        Duration probeInterval = duration(options.getOrDefault("probe-interval", "250ms"));
+        Duration probeTimeout = duration(options.getOrDefault("probe-timeout", "10s"));
+        String header = options.get("header");
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Long> firstBytes = Collections.synchronizedList(new ArrayList<>());
+        Map<String, Integer> clientFailures = new ConcurrentHashMap<>();
+        AtomicLong streamed = new AtomicLong();
+        List<Long> probes = new ArrayList<>();
+        int probeFailures = 0;
+
+        try (ExecutorService viewers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                viewers.execute(() -> {
+                    try {
+                        long started = System.nanoTime();
+                        firstBytes.add(stream(url, header, rate, deadline, started, streamed));
+                    } catch (IOException e) {
+                        clientFailures.merge(e.getClass().getSimpleName(), 1, Integer::sum);
+                    }
+                });
+            }
+            // let the viewers connect before the first probe
+            Thread.sleep(Math.min(2_000, duration.toMillis() / 4));
+            while (System.nanoTime() < deadline) {
+                long started = System.nanoTime();
+                try {
+                    fetch(probeUrl, header, (int) probeTimeout.toMillis());
+                    probes.add(System.nanoTime() - started);
+                } catch (IOException e) {
+                    probeFailures++;
+                }
+                long elapsed = System.nanoTime() - started;
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, probeInterval.toNanos() - elapsed));
+            }
+            // viewers stop reading at the deadline, closing the executor waits for them
+        }
+
+        System.out.printf(Locale.ROOT, "viewers: %d, failed %s, first byte %s, %.1f MB streamed%n",
+                clients, clientFailures, percentiles(firstBytes), streamed.get() / 1e6);
+        System.out.printf(Locale.ROOT, "probes:  %d, failed %d, latency %s%n",
+                probes.size(), probeFailures, percentiles(probes));
+    }
+
+    // returns the nanoseconds to the first byte, then reads at the rate until the deadline or the end
+    private static long stream(URI url, String header, int rate, long deadline, long started, AtomicLong streamed)
+            throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(RECEIVE_BUFFER);
+            socket.setSoTimeout(STALL_TIMEOUT_MS);
+            socket.connect(address(url), CONNECT_TIMEOUT_MS);
+            request(socket.getOutputStream(), url, header);
+            InputStream in = socket.getInputStream();
+            byte[] chunk = new byte[Math.max(1, Math.min(RECEIVE_BUFFER, rate / 4))];
+            int read = in.read(chunk);
+            if (read < 0) {
+                throw new IOException("No response");
+            }
+            long firstByte = System.nanoTime() - started;
+            long budgetStart = System.nanoTime();
+            long total = read;
+            while (System.nanoTime() < deadline && (read = in.read(chunk)) >= 0) {
+                total += read;
+                long due = budgetStart + total * 1_000_000_000L / rate;
+                long wait = Math.min(due, deadline) - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            streamed.addAndGet(total);
+            return firstByte;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static void fetch(URI url, String header, int timeoutMs) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setSoTimeout(timeoutMs);
+            socket.connect(address(url), CONNECT_TIMEOUT_MS);
+            request(socket.getOutputStream(), url, header);
+            InputStream in = socket.getInputStream();
+            byte[] head = new byte[12];
+            if (in.readNBytes(head, 0, head.length) < head.length) {
+                throw new IOException("Short response");
+            }
+            String status = new String(head, StandardCharsets.ISO_8859_1);
+            if (!status.startsWith("HTTP/1.1 2") && !status.startsWith("HTTP/1.1 3")) {
+                throw new IOException("Unexpected status " + status);
+            }
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static void request(OutputStream out, URI url, String header) throws IOException {
+        String path = url.getRawPath() + (url.getRawQuery() != null ? "?" + url.getRawQuery() : "");
+        StringBuilder request = new StringBuilder()
+                .append("GET ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(url.getHost()).append(':').append(port(url)).append("\r\n")
+                .append("Connection: close\r\n");
+        if (header != null) {
+            request.append(header).append("\r\n");
+        }
+        out.write(request.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static InetSocketAddress address(URI url) {
+        return new InetSocketAddress(url.getHost(), port(url));
+    }
+
+    private static int port(URI url) {
+        return url.getPort() > 0 ? url.getPort() : 80;
+    }
+
+    private static String percentiles(List<Long> samples) {
+        if (samples.isEmpty()) {
+            return "n/a";
+        }
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        return String.format(Locale.ROOT, "p50 %.0f ms, p95 %.0f ms, p99 %.0f ms, max %.0f ms",
+                at(sorted, 0.50), at(sorted, 0.95), at(sorted, 0.99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double at(List<Long> sorted, double quantile) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(quantile * sorted.size()) - 1)) / 1e6;
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator).replaceFirst("^--", ""), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + name + "=...");
+        }
+        return value;
+    }
+}
@@ -6,7 +6,15 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @SpringBootApplication
 public class HflixApplication {
 
+	private static final String MAX_CARRIERS = "jdk.virtualThreadScheduler.maxPoolSize";
+
 	public static void main(String[] args) {
+		// Tomcat's blocking writes wait on a monitor, which pins the carrier of a virtual thread
+		// on Java 21. The scheduler adds a carrier per pinned writer up to this ceiling, 256 by
+		// default, so a few hundred slow viewers would otherwise stall every other request.
+		if (System.getProperty(MAX_CARRIERS) == null) {
+			System.setProperty(MAX_CARRIERS, "4096");
+		}
 		SpringApplication.run(HflixApplication.class, args);
 	}
 
@@ -4,6 +4,7 @@ package com.hapidzfadli.hflix.api.controller.v1;
 import com.hapidzfadli.hflix.api.dto.*;
 import com.hapidzfadli.hflix.app.service.UserService;
 import com.hapidzfadli.hflix.app.service.impl.JwtTokenProvider;
+import com.hapidzfadli.hflix.app.service.impl.UserPrincipal;
 import com.hapidzfadli.hflix.config.JwtProperties;
 import com.hapidzfadli.hflix.domain.entity.User;
 import jakarta.validation.Valid;
@@ -66,16 +67,15 @@ public class AuthController {
         // Set authentication in the security context
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        // Get user from database
-        User user = userService.findByUsername(loginRequest.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // Reuse the user loaded during authentication
+        User user = ((UserPrincipal) authentication.getPrincipal()).getUser();
+
+        // Update last login timestamp (buffered, written in batches)
+        userService.updateLastLogin(user);
 
         // Generate JWT token
         String jwt = tokenProvider.generateToken(user);
 
-        // Update last login timestamp
-        userService.updateLastLogin(user.getUsername());
-
         // Create response
         JwtResponseDTO jwtResponse = JwtResponseDTO.builder()
                 .tokenType(jwtProperties.getTokenPrefix().trim())
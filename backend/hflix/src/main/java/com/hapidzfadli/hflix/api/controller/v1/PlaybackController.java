@@ -0,0 +1,81 @@
+package com.hapidzfadli.hflix.api.controller.v1;
+
+import com.hapidzfadli.hflix.api.dto.PlaybackHeartbeatDTO;
+import com.hapidzfadli.hflix.api.dto.PlaybackPositionDTO;
+import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import com.hapidzfadli.hflix.api.exception.InvalidRequestException;
+import com.hapidzfadli.hflix.api.exception.UserNotFoundException;
+import com.hapidzfadli.hflix.app.service.UserService;
+import com.hapidzfadli.hflix.app.service.impl.PlaybackPositionBuffer;
+import com.hapidzfadli.hflix.app.service.impl.TokenPrincipal;
+import com.hapidzfadli.hflix.config.PlaybackProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * "Continue watching" positions. Players send a heartbeat with their position every few
+ * seconds, it only lands in {@link PlaybackPositionBuffer} and the database sees batched
+ * writes. Reads go through the same buffer.
+ */
+@RestController
+@RequestMapping("/api/playback")
+@RequiredArgsConstructor
+public class PlaybackController {
+
+    private final PlaybackPositionBuffer playbackPositionBuffer;
+    private final PlaybackProperties playbackProperties;
+    private final UserService userService;
+
+    @PutMapping("/{videoId}")
+    public ResponseEntity<Void> heartbeat(
+            @PathVariable Long videoId,
+            @Valid @RequestBody PlaybackHeartbeatDTO heartbeat,
+            Authentication authentication
+    ) {
+        if (videoId <= 0) {
+            throw new InvalidRequestException("Invalid video id");
+        }
+        playbackPositionBuffer.record(userId(authentication), videoId, heartbeat.getPositionMs(),
+                heartbeat.getDurationMs());
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{videoId}")
+    public ResponseEntity<WebResponseDTO<PlaybackPositionDTO>> getPosition(@PathVariable Long videoId,
+                                                                           Authentication authentication) {
+        return playbackPositionBuffer.find(userId(authentication), videoId)
+                .map(position -> ResponseEntity.ok(WebResponseDTO.success(PlaybackPositionDTO.fromPosition(position),
+                        "Playback position retrieved successfully")))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(WebResponseDTO.error("No playback position for video " + videoId)));
+    }
+
+    @GetMapping
+    public ResponseEntity<WebResponseDTO<List<PlaybackPositionDTO>>> continueWatching(
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication
+    ) {
+        int limit = Math.max(1, Math.min(size, playbackProperties.getMaxListSize()));
+        List<PlaybackPositionDTO> positions = playbackPositionBuffer.findRecent(userId(authentication), limit).stream()
+                .map(PlaybackPositionDTO::fromPosition)
+                .toList();
+        return ResponseEntity.ok(WebResponseDTO.success(positions, "Playback positions retrieved successfully"));
+    }
+
+    // bearer tokens carry the id, only sessions without it look the user up
+    private Long userId(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof TokenPrincipal principal && principal.userId() != null) {
+            return principal.userId();
+        }
+        return userService.findByUsername(authentication.getName())
+                .map(User::getId)
+                .orElseThrow(() -> new UserNotFoundException("User not found: " + authentication.getName()));
+    }
+}
@@ -1,21 +1,34 @@
 package com.hapidzfadli.hflix.api.controller.v1;
 
 
+import com.hapidzfadli.hflix.api.dto.BulkUserIdsRequestDTO;
+import com.hapidzfadli.hflix.api.dto.BulkUserImportRequestDTO;
+import com.hapidzfadli.hflix.api.dto.UserCursor;
 import com.hapidzfadli.hflix.api.dto.UserDTO;
 import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import com.hapidzfadli.hflix.api.exception.UserNotFoundException;
+import com.hapidzfadli.hflix.app.service.BulkImportResult;
 import com.hapidzfadli.hflix.app.service.UserService;
+import com.hapidzfadli.hflix.app.service.impl.UserExportService;
 import com.hapidzfadli.hflix.domain.entity.User;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +41,7 @@ import java.util.stream.Collectors;
 public class UserController {
 
     private final UserService userService;
+    private final UserExportService userExportService;
 
     @GetMapping
     public ResponseEntity<WebResponseDTO<List<UserDTO>>> getAllUsers(
@@ -36,34 +50,71 @@ public class UserController {
             @RequestParam(defaultValue = "id") String sort,
             @RequestParam(defaultValue = "ASC") String direction,
             @RequestParam(required = false) String keyword,
-            @RequestParam(required = false) String status
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "exact") String count
     ) {
         Sort.Direction sortDirection = Sort.Direction.fromString(direction);
-        Pageable pageable = PageRequest.of(page, size, Sort.by(sortDirection, sort));
-        Page<User> usersPage;
+        User.Status statusFilter = StringUtils.hasText(status) ? User.Status.valueOf(status.toUpperCase()) : null;
+        CountMode countMode = CountMode.from(count);
 
-        usersPage = userService.findAllUsers(pageable);
+        // cursor mode: seek on (sort key, id) instead of LIMIT/OFFSET, pass cursor= for the first page
+        if (cursor != null) {
+            return ResponseEntity.ok(scrollUsers(size, sort, sortDirection, keyword, statusFilter, cursor, countMode));
+        }
 
-        List<UserDTO> userDTOS = usersPage.getContent().stream()
-                .map(UserDTO::fromUser)
-                .collect(Collectors.toList());
+        Sort sortBy = Sort.by(sortDirection, sort);
+        Map<String, Object> paginationInfo;
+        List<User> users;
+
+        if (countMode == CountMode.EXACT) {
+            Page<User> usersPage = userService.findAllUsers(keyword, statusFilter, PageRequest.of(page, size, sortBy));
+            users = usersPage.getContent();
+            paginationInfo = createPaginationInfo(usersPage);
+        } else {
+            // no COUNT(*): fetch the page as a window and only report whether more rows follow
+            // an offset position points at the last row already seen
+            ScrollPosition position = page == 0 ? ScrollPosition.offset() : ScrollPosition.offset((long) page * size - 1);
+            Window<User> window = userService.scrollUsers(keyword, statusFilter, sortBy, position, size);
+            users = window.getContent();
+            paginationInfo = new HashMap<>();
+            paginationInfo.put("page", page);
+            paginationInfo.put("size", size);
+            paginationInfo.put("isFirst", page == 0);
+            paginationInfo.put("isLast", !window.hasNext());
+            paginationInfo.put("hasNext", window.hasNext());
+            putEstimatedTotals(paginationInfo, countMode, keyword, statusFilter, size);
+        }
+        paginationInfo.put("countMode", countMode.name().toLowerCase());
 
         WebResponseDTO<List<UserDTO>> response = WebResponseDTO.<List<UserDTO>>builder()
                 .success(true)
                 .message("User retrieved successfully")
-                .data(userDTOS)
+                .data(toUserDTOs(users))
                 .build();
-
-
-        Map<String, Object> paginationInfo = createPaginationInfo(usersPage);
         response.setPagination(paginationInfo);
 
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportUsers(
+            @RequestParam(defaultValue = "ndjson") String format,
+            HttpServletResponse response
+    ) throws IOException {
+        UserExportService.Format exportFormat = UserExportService.Format.from(format);
+
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users." + exportFormat.getExtension() + "\"");
+
+        userExportService.export(exportFormat, response.getOutputStream());
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<WebResponseDTO<UserDTO>> getUserById(@PathVariable Long id){
-        User user = userService.findById(id).orElseThrow(() -> new RuntimeException("User not found with user id: " + id));
+        User user = userService.findById(id).orElseThrow(() -> UserNotFoundException.withId(id));
 
         WebResponseDTO<UserDTO> response = WebResponseDTO.success(
                 UserDTO.fromUser(user),
@@ -133,6 +184,97 @@ public class UserController {
 
 
 
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<WebResponseDTO<BulkImportResult>> importUsers(
+            @Valid @RequestBody BulkUserImportRequestDTO request) {
+        List<User> users = request.getUsers().stream()
+                .map(userDTO -> userDTO != null ? userDTO.toUser() : null)
+                .collect(Collectors.toList());
+
+        BulkImportResult result = userService.importUsers(users);
+
+        WebResponseDTO<BulkImportResult> response = WebResponseDTO.success(
+                result,
+                "Imported " + result.getCreated() + " of " + result.getTotal() + " users"
+        );
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PatchMapping("/bulk/status")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<WebResponseDTO<Map<String, Integer>>> changeUsersStatus(
+            @RequestParam User.Status status,
+            @Valid @RequestBody BulkUserIdsRequestDTO request) {
+
+        int updated = userService.changeUsersStatus(request.getIds(), status);
+
+        return ResponseEntity.ok(WebResponseDTO.success(Map.of("updated", updated), "User status updated successfully"));
+    }
+
+    @PostMapping("/bulk/delete")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<WebResponseDTO<Map<String, Integer>>> deleteUsers(
+            @Valid @RequestBody BulkUserIdsRequestDTO request) {
+
+        int deleted = userService.deleteUsers(request.getIds());
+
+        return ResponseEntity.ok(WebResponseDTO.success(Map.of("deleted", deleted), "Users deleted successfully"));
+    }
+
+    private WebResponseDTO<List<UserDTO>> scrollUsers(int size, String sort, Sort.Direction direction, String keyword,
+                                                      User.Status status, String cursor, CountMode countMode) {
+        Sort sortBy = UserCursor.keysetSort(sort, direction);
+        ScrollPosition position = UserCursor.decode(cursor, sort, direction);
+
+        Window<User> window = userService.scrollUsers(keyword, status, sortBy, position, size);
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? UserCursor.encode(window.positionAt(window.size() - 1), sort, direction)
+                : null;
+
+        Map<String, Object> paginationInfo = new HashMap<>();
+        paginationInfo.put("size", size);
+        paginationInfo.put("isFirst", position.isInitial());
+        paginationInfo.put("isLast", !window.hasNext());
+        paginationInfo.put("hasNext", window.hasNext());
+        paginationInfo.put("nextCursor", nextCursor);
+        paginationInfo.put("countMode", countMode.name().toLowerCase());
+
+        if (countMode == CountMode.EXACT) {
+            long total = userService.countUsers(keyword, status);
+            paginationInfo.put("totalElements", total);
+            paginationInfo.put("totalPages", (int) Math.ceil((double) total / size));
+        } else {
+            putEstimatedTotals(paginationInfo, countMode, keyword, status, size);
+        }
+
+        return WebResponseDTO.<List<UserDTO>>builder()
+                .success(true)
+                .message("User retrieved successfully")
+                .data(toUserDTOs(window.getContent()))
+                .pagination(paginationInfo)
+                .build();
+    }
+
+    // table statistics only describe the unfiltered table, filtered listings skip totals
+    private void putEstimatedTotals(Map<String, Object> paginationInfo, CountMode countMode, String keyword,
+                                    User.Status status, int size) {
+        if (countMode != CountMode.ESTIMATE || StringUtils.hasText(keyword) || status != null) {
+            return;
+        }
+
+        long estimate = userService.estimateUserCount();
+        paginationInfo.put("totalElements", estimate);
+        paginationInfo.put("totalPages", (int) Math.ceil((double) estimate / size));
+    }
+
+    private List<UserDTO> toUserDTOs(List<User> users) {
+        return users.stream()
+                .map(UserDTO::fromUser)
+                .collect(Collectors.toList());
+    }
+
     private Map<String, Object> createPaginationInfo(Page<User> usersPage) {
         Map<String, Object> paginationInfo = new HashMap<>();
         paginationInfo.put("page", usersPage.getNumber());
@@ -143,4 +285,14 @@ public class UserController {
         paginationInfo.put("isLast", usersPage.isLast());
         return paginationInfo;
     }
+
+    private enum CountMode {
+        EXACT,
+        ESTIMATE,
+        NONE;
+
+        static CountMode from(String value) {
+            return CountMode.valueOf(value.trim().toUpperCase());
+        }
+    }
 }
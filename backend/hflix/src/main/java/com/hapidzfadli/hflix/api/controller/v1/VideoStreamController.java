@@ -0,0 +1,64 @@
+package com.hapidzfadli.hflix.api.controller.v1;
+
+import com.hapidzfadli.hflix.app.service.VideoFile;
+import com.hapidzfadli.hflix.app.service.impl.ManifestService;
+import com.hapidzfadli.hflix.app.service.impl.VideoStreamingService;
+import com.hapidzfadli.hflix.app.service.impl.ViewCounter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/videos")
+@RequiredArgsConstructor
+public class VideoStreamController {
+
+    private final VideoStreamingService videoStreamingService;
+    private final ManifestService manifestService;
+    private final ViewCounter viewCounter;
+
+    // GET and HEAD, honours Range, If-Range, If-None-Match and If-Modified-Since;
+    // profile, maxHeight and maxBandwidth cap the ladder of master.m3u8 and manifest.mpd
+    @GetMapping("/{videoId}/stream/{fileName}")
+    public void stream(
+            @PathVariable Long videoId,
+            @PathVariable String fileName,
+            @RequestParam(required = false) String profile,
+            @RequestParam(required = false) Integer maxHeight,
+            @RequestParam(required = false) Long maxBandwidth,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        long started = System.nanoTime();
+        VideoFile file = videoStreamingService.resolve(videoId, fileName,
+                manifestService.filter(profile, maxHeight, maxBandwidth));
+        // a playback starts with either entry manifest, segment requests are not views
+        if (HttpMethod.GET.matches(request.getMethod())
+                && (fileName.equals(ManifestService.MASTER_PLAYLIST) || fileName.equals(ManifestService.DASH_MANIFEST))) {
+            viewCounter.record(videoId);
+        }
+        videoStreamingService.stream(file, started, request, response);
+    }
+
+    // poster.jpg, frame_NNNNN.jpg, sprite_NNN.jpg and trickplay.vtt of a thumbnail version
+    @GetMapping("/{videoId}/thumbnails/{version}/{fileName}")
+    public void thumbnail(
+            @PathVariable Long videoId,
+            @PathVariable String version,
+            @PathVariable String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        long started = System.nanoTime();
+        VideoFile file = videoStreamingService.resolveThumbnail(videoId, version, fileName);
+        videoStreamingService.streamThumbnail(file, started, request, response);
+    }
+}
@@ -0,0 +1,104 @@
+package com.hapidzfadli.hflix.api.controller.v1;
+
+import com.hapidzfadli.hflix.api.dto.UploadCreateRequestDTO;
+import com.hapidzfadli.hflix.api.dto.VideoDTO;
+import com.hapidzfadli.hflix.api.dto.VideoUploadDTO;
+import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import com.hapidzfadli.hflix.app.service.impl.VideoUploadService;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.entity.VideoUpload;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Resumable uploads following the tus core protocol: create, then PATCH chunks with
+ * {@code Upload-Offset} (and optionally {@code Upload-Checksum}), HEAD to learn the offset
+ * after a failure, and finalize once every byte has arrived.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+public class VideoUploadController {
+
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+
+    private final VideoUploadService videoUploadService;
+
+    @PostMapping
+    public ResponseEntity<WebResponseDTO<VideoUploadDTO>> createUpload(
+            @Valid @RequestBody UploadCreateRequestDTO request,
+            Authentication authentication
+    ) throws IOException {
+        VideoUpload upload = videoUploadService.create(authentication.getName(), request.getFileName(),
+                request.getLength(), request.getContentType(), request.getTitle());
+
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(upload.getId()).toUri())
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, "0")
+                .body(WebResponseDTO.success(VideoUploadDTO.fromUpload(upload), "Upload created successfully"));
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getOffset(@PathVariable String id, Authentication authentication) {
+        VideoUpload upload = videoUploadService.find(id, authentication.getName());
+
+        return ResponseEntity.ok()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getUploadOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getUploadLength()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<WebResponseDTO<VideoUploadDTO>> getUpload(@PathVariable String id, Authentication authentication) {
+        VideoUpload upload = videoUploadService.find(id, authentication.getName());
+        return ResponseEntity.ok(WebResponseDTO.success(VideoUploadDTO.fromUpload(upload), "Upload retrieved successfully"));
+    }
+
+    // the body is read raw from the request, servlet multipart never spools it
+    @PatchMapping(value = "/{id}", consumes = "application/offset+octet-stream")
+    public ResponseEntity<Void> writeChunk(
+            @PathVariable String id,
+            @RequestHeader(UPLOAD_OFFSET) long offset,
+            @RequestHeader(value = "Upload-Checksum", required = false) String checksum,
+            HttpServletRequest request,
+            Authentication authentication
+    ) throws IOException {
+        long newOffset = videoUploadService.writeChunk(id, authentication.getName(), offset,
+                request.getContentLengthLong(), checksum, request.getInputStream());
+
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(newOffset))
+                .build();
+    }
+
+    @PostMapping("/{id}/finalize")
+    public ResponseEntity<WebResponseDTO<VideoDTO>> finalizeUpload(@PathVariable String id, Authentication authentication)
+            throws IOException {
+        Video video = videoUploadService.finalizeUpload(id, authentication.getName());
+        return ResponseEntity.ok(WebResponseDTO.success(VideoDTO.fromVideo(video), "Upload finalized successfully"));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancelUpload(@PathVariable String id, Authentication authentication) throws IOException {
+        videoUploadService.cancel(id, authentication.getName());
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.hapidzfadli.hflix.api.controller.v1;
+
+import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import com.hapidzfadli.hflix.app.service.TrendingVideo;
+import com.hapidzfadli.hflix.app.service.impl.TrendingService;
+import com.hapidzfadli.hflix.app.service.impl.ViewCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * View counts and the trending list. Views are counted by {@link VideoStreamController}
+ * when a player loads the master playlist or the DASH manifest.
+ */
+@RestController
+@RequestMapping("/api/videos")
+@RequiredArgsConstructor
+public class VideoViewController {
+
+    private final ViewCounter viewCounter;
+    private final TrendingService trendingService;
+
+    // served from memory, refreshed every app.trending.refresh-interval-ms
+    @GetMapping("/trending")
+    public ResponseEntity<WebResponseDTO<List<TrendingVideo>>> trending() {
+        return ResponseEntity.ok(WebResponseDTO.success(trendingService.trending(), "Trending videos retrieved successfully"));
+    }
+
+    @GetMapping("/{videoId}/views")
+    public ResponseEntity<WebResponseDTO<Map<String, Long>>> views(@PathVariable Long videoId) {
+        long views = viewCounter.views(videoId);
+        return ResponseEntity.ok(WebResponseDTO.success(Map.of("videoId", videoId, "views", views),
+                "View count retrieved successfully"));
+    }
+}
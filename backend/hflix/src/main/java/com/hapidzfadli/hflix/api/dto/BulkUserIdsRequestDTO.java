@@ -0,0 +1,21 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkUserIdsRequestDTO {
+
+    @NotEmpty(message = "Ids are required")
+    @Size(max = 1000, message = "At most 1000 ids per request")
+    private List<Long> ids;
+}
@@ -0,0 +1,24 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Rows are validated one by one during the import so a bad row does not reject the whole request.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkUserImportRequestDTO {
+
+    @NotEmpty(message = "Users are required")
+    @Size(max = 50000, message = "At most 50000 users per request")
+    private List<UserDTO> users;
+}
@@ -0,0 +1,22 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PlaybackHeartbeatDTO {
+
+    @NotNull(message = "Position is required")
+    @PositiveOrZero(message = "Position must not be negative")
+    private Long positionMs;
+
+    @PositiveOrZero(message = "Duration must not be negative")
+    private Long durationMs;
+}
@@ -0,0 +1,33 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import com.hapidzfadli.hflix.domain.entity.PlaybackPosition;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackPositionDTO {
+
+    private Long videoId;
+
+    private long positionMs;
+
+    private Long durationMs;
+
+    private LocalDateTime updatedAt;
+
+    public static PlaybackPositionDTO fromPosition(PlaybackPosition position) {
+        return PlaybackPositionDTO.builder()
+                .videoId(position.getVideoId())
+                .positionMs(position.getPositionMs())
+                .durationMs(position.getDurationMs())
+                .updatedAt(position.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,31 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadCreateRequestDTO {
+
+    @NotBlank(message = "File name is required")
+    @Size(max = 255, message = "File name must be less than 255 characters")
+    private String fileName;
+
+    @NotNull(message = "Length is required")
+    @Positive(message = "Length must be positive")
+    private Long length;
+
+    @Size(max = 100, message = "Content type must be less than 100 characters")
+    private String contentType;
+
+    @Size(max = 200, message = "Title must be less than 200 characters")
+    private String title;
+}
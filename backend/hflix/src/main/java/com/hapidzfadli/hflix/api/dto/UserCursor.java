@@ -0,0 +1,97 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import com.hapidzfadli.hflix.api.exception.InvalidRequestException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Opaque continuation token for keyset pagination over users. The token records the
+ * sort it was issued for plus the sort key and id of the last row of the page.
+ */
+public final class UserCursor {
+
+    // Only non-null columns can be used as a seek key
+    public static final Set<String> SORTABLE_PROPERTIES = Set.of("id", "username", "email", "createdAt");
+
+    private static final String SEPARATOR = "|";
+
+    private UserCursor() {
+    }
+
+    public static Sort keysetSort(String property, Sort.Direction direction) {
+        if (!SORTABLE_PROPERTIES.contains(property)) {
+            throw new InvalidRequestException("Cursor pagination supports sorting by " + SORTABLE_PROPERTIES);
+        }
+
+        Sort sort = Sort.by(direction, property);
+        return "id".equals(property) ? sort : sort.and(Sort.by(direction, "id"));
+    }
+
+    public static ScrollPosition decode(String token, String property, Sort.Direction direction) {
+        if (token == null || token.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+
+        String[] parts = decoded.split("\\" + SEPARATOR, -1);
+        if (parts.length < 2 || !parts[0].equals(property + ":" + direction.name())) {
+            throw new InvalidRequestException("Cursor does not match the requested sort");
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq <= 0) {
+                throw new InvalidRequestException("Invalid cursor");
+            }
+            String name = parts[i].substring(0, eq);
+            String value = URLDecoder.decode(parts[i].substring(eq + 1), StandardCharsets.UTF_8);
+            keys.put(name, parseValue(name, value));
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    public static String encode(ScrollPosition position, String property, Sort.Direction direction) {
+        if (!(position instanceof KeysetScrollPosition keyset) || keyset.isInitial()) {
+            return null;
+        }
+
+        StringBuilder token = new StringBuilder(property).append(':').append(direction.name());
+        keyset.getKeys().forEach((name, value) -> token.append(SEPARATOR)
+                .append(name)
+                .append('=')
+                .append(URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8)));
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object parseValue(String name, String value) {
+        try {
+            return switch (name) {
+                case "id" -> Long.valueOf(value);
+                case "createdAt" -> LocalDateTime.parse(value);
+                case "username", "email" -> value;
+                default -> throw new InvalidRequestException("Invalid cursor");
+            };
+        } catch (RuntimeException e) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+    }
+}
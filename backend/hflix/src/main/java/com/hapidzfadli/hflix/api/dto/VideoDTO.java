@@ -0,0 +1,72 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import com.hapidzfadli.hflix.domain.entity.Video;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoDTO {
+
+    private Long id;
+
+    private Long ownerId;
+
+    private String title;
+
+    private String originalFileName;
+
+    private String contentType;
+
+    private Long sizeBytes;
+
+    private Double durationSeconds;
+
+    private Integer width;
+
+    private Integer height;
+
+    private String videoCodec;
+
+    private String audioCodec;
+
+    private String contentSha256;
+
+    private Video.Status status;
+
+    private String thumbnailVersion;
+
+    private long viewCount;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    public static VideoDTO fromVideo(Video video) {
+        return VideoDTO.builder()
+                .id(video.getId())
+                .ownerId(video.getOwnerId())
+                .title(video.getTitle())
+                .originalFileName(video.getOriginalFileName())
+                .contentType(video.getContentType())
+                .sizeBytes(video.getSizeBytes())
+                .durationSeconds(video.getDurationSeconds())
+                .width(video.getWidth())
+                .height(video.getHeight())
+                .videoCodec(video.getVideoCodec())
+                .audioCodec(video.getAudioCodec())
+                .contentSha256(video.getContentSha256())
+                .status(video.getStatus())
+                .thumbnailVersion(video.getThumbnailVersion())
+                .viewCount(video.getViewCount())
+                .createdAt(video.getCreatedAt())
+                .updatedAt(video.getUpdatedAt())
+                .build();
+    }
+}
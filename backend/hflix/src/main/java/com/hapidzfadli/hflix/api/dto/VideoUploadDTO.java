@@ -0,0 +1,39 @@
+package com.hapidzfadli.hflix.api.dto;
+
+import com.hapidzfadli.hflix.domain.entity.VideoUpload;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoUploadDTO {
+
+    private String id;
+
+    private Long videoId;
+
+    private long offset;
+
+    private long length;
+
+    private VideoUpload.Status status;
+
+    private LocalDateTime expiresAt;
+
+    public static VideoUploadDTO fromUpload(VideoUpload upload) {
+        return VideoUploadDTO.builder()
+                .id(upload.getId())
+                .videoId(upload.getVideoId())
+                .offset(upload.getUploadOffset())
+                .length(upload.getUploadLength())
+                .status(upload.getStatus())
+                .expiresAt(upload.getExpiresAt())
+                .build();
+    }
+}
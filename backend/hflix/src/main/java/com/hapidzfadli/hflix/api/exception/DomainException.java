@@ -0,0 +1,19 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Base type for expected, client-caused failures. These are thrown on routine paths
+ * (missing users, duplicates, bad cursors, overload), so no stack trace is captured.
+ */
+@Getter
+public abstract class DomainException extends RuntimeException {
+
+    private final HttpStatusCode status;
+
+    protected DomainException(String message, HttpStatusCode status) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+}
@@ -0,0 +1,10 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class DuplicateUserException extends DomainException {
+
+    public DuplicateUserException(String message) {
+        super(message, HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,83 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes error bodies outside Spring MVC (security entry points and filters) with the
+ * shared ObjectMapper. Bodies for recurring messages are encoded once, only the
+ * timestamp is serialized per response.
+ */
+@Component
+public class ErrorResponseWriter {
+
+    private static final int MAX_CACHED_MESSAGES = 64;
+    private static final byte[] NULL_TIMESTAMP_TAIL = "null}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE_OBJECT = "}".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectWriter responseWriter;
+    private final ObjectWriter timestampWriter;
+    // body up to and including "timestamp": for each error message
+    private final Map<String, byte[]> prefixes = new ConcurrentHashMap<>();
+
+    public ErrorResponseWriter(ObjectMapper objectMapper) {
+        this.responseWriter = objectMapper.writerFor(WebResponseDTO.class);
+        this.timestampWriter = objectMapper.writerFor(LocalDateTime.class);
+    }
+
+    public void write(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        OutputStream out = response.getOutputStream();
+        byte[] prefix = prefix(message);
+        if (prefix == null) {
+            responseWriter.writeValue(out, WebResponseDTO.error(message));
+            return;
+        }
+
+        out.write(prefix);
+        out.write(timestampWriter.writeValueAsBytes(LocalDateTime.now()));
+        out.write(CLOSE_OBJECT);
+        out.flush();
+    }
+
+    private byte[] prefix(String message) {
+        byte[] prefix = prefixes.get(message);
+        if (prefix != null || prefixes.size() >= MAX_CACHED_MESSAGES) {
+            return prefix;
+        }
+
+        try {
+            WebResponseDTO<Object> template = WebResponseDTO.error(message);
+            template.setTimestamp(null);
+            byte[] encoded = responseWriter.writeValueAsBytes(template);
+
+            // only splice when the timestamp is the trailing property, otherwise serialize normally
+            int tailStart = encoded.length - NULL_TIMESTAMP_TAIL.length;
+            if (tailStart < 0 || !Arrays.equals(encoded, tailStart, encoded.length,
+                    NULL_TIMESTAMP_TAIL, 0, NULL_TIMESTAMP_TAIL.length)) {
+                return null;
+            }
+
+            prefix = Arrays.copyOf(encoded, tailStart);
+            prefixes.putIfAbsent(message, prefix);
+            return prefix;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
@@ -5,8 +5,11 @@ import com.hapidzfadli.hflix.api.dto.WebResponseDTO;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -21,6 +24,9 @@ import java.util.Map;
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    // routine client errors are logged without stack traces and at most 20 times per type per minute
+    private static final SampledErrorLogger sampledLog = new SampledErrorLogger(log, 20, 60_000);
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<WebResponseDTO<Map<String, String>>> handleValidationExceptions(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
@@ -50,7 +56,7 @@ public class GlobalExceptionHandler {
     public ResponseEntity<WebResponseDTO<String>> handleEntityNotFound(
             EntityNotFoundException ex) {
 
-        log.error("Entity not found: {}", ex.getMessage(), ex);
+        sampledLog.warn("EntityNotFoundException", "Entity not found: {}", ex.getMessage());
         return new ResponseEntity<>(
                 WebResponseDTO.error(ex.getMessage()),
                 HttpStatus.NOT_FOUND);
@@ -61,7 +67,11 @@ public class GlobalExceptionHandler {
     public ResponseEntity<WebResponseDTO<String>> handleResponseStatusException(
             ResponseStatusException ex) {
 
-        log.error("Response status exception: {}", ex.getMessage(), ex);
+        if (ex.getStatusCode().is5xxServerError()) {
+            log.error("Response status exception: {}", ex.getMessage(), ex);
+        } else {
+            sampledLog.warn("ResponseStatusException", "Response status exception: {}", ex.getMessage());
+        }
         return new ResponseEntity<>(
                 WebResponseDTO.error(ex.getReason()),
                 ex.getStatusCode());
@@ -73,12 +83,61 @@ public class GlobalExceptionHandler {
     public ResponseEntity<WebResponseDTO<String>> handleIllegalArgumentException(
             IllegalArgumentException ex) {
 
-        log.error("Illegal argument: {}", ex.getMessage(), ex);
+        sampledLog.warn("IllegalArgumentException", "Illegal argument: {}", ex.getMessage());
         return new ResponseEntity<>(
                 WebResponseDTO.error(ex.getMessage()),
                 HttpStatus.BAD_REQUEST);
     }
 
+    // Handle typed domain exceptions, these carry no stack trace
+    @ExceptionHandler(DomainException.class)
+    public ResponseEntity<WebResponseDTO<String>> handleDomainException(DomainException ex) {
+        sampledLog.warn(ex.getClass().getSimpleName(), "{}: {}", ex.getClass().getSimpleName(), ex.getMessage());
+        return new ResponseEntity<>(
+                WebResponseDTO.error(ex.getMessage()),
+                ex.getStatus());
+    }
+
+    // Handle failed logins (bad credentials, disabled accounts) as 401 instead of 500
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<WebResponseDTO<String>> handleAuthenticationException(AuthenticationException ex) {
+        sampledLog.warn("AuthenticationException", "Authentication failed: {}", ex.getMessage());
+        return new ResponseEntity<>(
+                WebResponseDTO.error("Unauthorized: " + ex.getMessage()),
+                HttpStatus.UNAUTHORIZED);
+    }
+
+    // Handle method security denials (e.g. @PreAuthorize) as 403 instead of 500
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<WebResponseDTO<String>> handleAccessDenied(AccessDeniedException ex) {
+        return new ResponseEntity<>(
+                WebResponseDTO.error("Access denied"),
+                HttpStatus.FORBIDDEN);
+    }
+
+    // Handle saturated password hashing pool
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<WebResponseDTO<String>> handlePasswordHashingRejected(
+            PasswordHashingRejectedException ex) {
+
+        sampledLog.warn("PasswordHashingRejectedException", "Rejected request, password hashing pool is saturated");
+        return ResponseEntity.status(ex.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(WebResponseDTO.error(ex.getMessage()));
+    }
+
+    // Handle resumable upload failures, the current offset lets tus clients resume right away
+    @ExceptionHandler(UploadException.class)
+    public ResponseEntity<WebResponseDTO<String>> handleUploadException(UploadException ex) {
+        sampledLog.warn("UploadException", "Upload rejected: {}", ex.getMessage());
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(ex.getStatus())
+                .header("Tus-Resumable", "1.0.0");
+        if (ex.getOffset() != null) {
+            builder.header("Upload-Offset", String.valueOf(ex.getOffset()));
+        }
+        return builder.body(WebResponseDTO.error(ex.getMessage()));
+    }
+
     // Handle general exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<WebResponseDTO<String>> handleAllExceptions(
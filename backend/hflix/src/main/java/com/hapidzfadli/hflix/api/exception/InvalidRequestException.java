@@ -0,0 +1,10 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidRequestException extends DomainException {
+
+    public InvalidRequestException(String message) {
+        super(message, HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,18 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when the password hashing pool is saturated and cannot accept more work.
+ */
+@Getter
+public class PasswordHashingRejectedException extends DomainException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingRejectedException(long retryAfterSeconds) {
+        super("Server is busy, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,65 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limits log lines per key (usually the exception type): at most
+ * {@code maxPerWindow} lines per window are written, the rest are counted and
+ * reported once in the next window. Keeps error floods from scanners or
+ * expired-token clients from turning into log floods.
+ */
+public class SampledErrorLogger {
+
+    private final Logger logger;
+    private final int maxPerWindow;
+    private final long windowMillis;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public SampledErrorLogger(Logger logger, int maxPerWindow, long windowMillis) {
+        this.logger = logger;
+        this.maxPerWindow = maxPerWindow;
+        this.windowMillis = windowMillis;
+    }
+
+    public void warn(String key, String format, Object... args) {
+        if (allow(key)) {
+            logger.warn(format, args);
+        }
+    }
+
+    public void error(String key, String format, Object... args) {
+        if (allow(key)) {
+            logger.error(format, args);
+        }
+    }
+
+    private boolean allow(String key) {
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        long now = System.currentTimeMillis();
+        long start = window.start.get();
+
+        if (now - start >= windowMillis && window.start.compareAndSet(start, now)) {
+            long suppressed = window.suppressed.getAndSet(0);
+            window.count.set(0);
+            if (suppressed > 0) {
+                logger.warn("Suppressed {} similar '{}' log lines in the last {} ms", suppressed, key, windowMillis);
+            }
+        }
+
+        if (window.count.incrementAndGet() <= maxPerWindow) {
+            return true;
+        }
+        window.suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static final class Window {
+        private final AtomicLong start = new AtomicLong(System.currentTimeMillis());
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+    }
+}
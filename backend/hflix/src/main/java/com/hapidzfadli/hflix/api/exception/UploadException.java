@@ -0,0 +1,58 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Resumable upload failures. Clients retry on most of them, so they carry the offset
+ * the server holds when it is useful for resuming.
+ */
+@Getter
+public class UploadException extends DomainException {
+
+    // tus checksum extension, the chunk was discarded and can be resent
+    private static final HttpStatusCode CHECKSUM_MISMATCH = HttpStatusCode.valueOf(460);
+
+    private final Long offset;
+
+    private UploadException(String message, HttpStatusCode status, Long offset) {
+        super(message, status);
+        this.offset = offset;
+    }
+
+    public static UploadException notFound(String uploadId) {
+        return new UploadException("Upload not found: " + uploadId, HttpStatus.NOT_FOUND, null);
+    }
+
+    public static UploadException offsetConflict(long offset) {
+        return new UploadException("Upload-Offset does not match, the server holds " + offset + " bytes",
+                HttpStatus.CONFLICT, offset);
+    }
+
+    public static UploadException busy(long offset) {
+        return new UploadException("Another chunk for this upload is in progress", HttpStatus.CONFLICT, offset);
+    }
+
+    public static UploadException incomplete(long offset, long length) {
+        return new UploadException("Upload is incomplete, " + offset + " of " + length + " bytes received",
+                HttpStatus.CONFLICT, offset);
+    }
+
+    public static UploadException checksumMismatch(long offset) {
+        return new UploadException("Chunk checksum mismatch", CHECKSUM_MISMATCH, offset);
+    }
+
+    public static UploadException unsupportedType(String detectedType) {
+        return new UploadException("Content is not a supported video format (detected " + detectedType + ")",
+                HttpStatus.UNSUPPORTED_MEDIA_TYPE, null);
+    }
+
+    public static UploadException tooLarge(String message) {
+        return new UploadException(message, HttpStatus.PAYLOAD_TOO_LARGE, null);
+    }
+
+    public static UploadException invalid(String message) {
+        return new UploadException(message, HttpStatus.BAD_REQUEST, null);
+    }
+}
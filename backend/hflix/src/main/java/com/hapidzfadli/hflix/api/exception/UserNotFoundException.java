@@ -0,0 +1,14 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class UserNotFoundException extends DomainException {
+
+    public UserNotFoundException(String message) {
+        super(message, HttpStatus.NOT_FOUND);
+    }
+
+    public static UserNotFoundException withId(Long id) {
+        return new UserNotFoundException("User not found with ID: " + id);
+    }
+}
@@ -0,0 +1,18 @@
+package com.hapidzfadli.hflix.api.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class VideoNotFoundException extends DomainException {
+
+    public VideoNotFoundException(String message) {
+        super(message, HttpStatus.NOT_FOUND);
+    }
+
+    public static VideoNotFoundException withId(Long id) {
+        return new VideoNotFoundException("Video not found with ID: " + id);
+    }
+
+    public static VideoNotFoundException withFile(Long videoId, String fileName) {
+        return new VideoNotFoundException("Video file not found: " + videoId + "/" + fileName);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hapidzfadli.hflix.app.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk user import, with one entry per rejected row.
+ */
+@Data
+@NoArgsConstructor
+public class BulkImportResult {
+
+    private int total;
+    private int created;
+    private int failed;
+    private List<RowError> errors = new ArrayList<>();
+
+    public void addError(int index, String username, String message) {
+        errors.add(new RowError(index, username, message));
+        failed++;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private int index;
+        private String username;
+        private String message;
+    }
+}
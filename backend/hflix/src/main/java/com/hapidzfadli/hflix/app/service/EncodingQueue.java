@@ -0,0 +1,12 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.hapidzfadli.hflix.model.EncodingJob;
+
+/**
+ * Hands encoding jobs to the workers. A job is acknowledged only after the worker is done
+ * with it, so jobs of a node that dies mid-encode are delivered again.
+ */
+public interface EncodingQueue {
+
+    void submit(EncodingJob job);
+}
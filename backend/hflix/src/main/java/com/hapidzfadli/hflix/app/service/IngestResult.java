@@ -0,0 +1,8 @@
+package com.hapidzfadli.hflix.app.service;
+
+/**
+ * Outcome of streaming an upload through the ingest tap: the SHA-256 of the whole file
+ * and the type Tika detected from its leading bytes.
+ */
+public record IngestResult(String sha256, String detectedType) {
+}
@@ -0,0 +1,32 @@
+package com.hapidzfadli.hflix.app.service;
+
+/**
+ * Caps applied to the ladder when a manifest is generated, so client variants (a mobile
+ * app, a data saver mode) are views of the same stored renditions. Null means no cap.
+ */
+public record ManifestFilter(Integer maxHeight, Long maxBandwidth) {
+
+    public static final ManifestFilter NONE = new ManifestFilter(null, null);
+
+    public boolean allows(SegmentIndex.Track track) {
+        if (track.type() != SegmentIndex.Type.VIDEO) {
+            return true;
+        }
+        return (maxHeight == null || track.height() == null || track.height() <= maxHeight)
+                && (maxBandwidth == null || track.bandwidth() <= maxBandwidth);
+    }
+
+    /**
+     * The tighter of both caps.
+     */
+    public ManifestFilter and(ManifestFilter other) {
+        return new ManifestFilter(min(maxHeight, other.maxHeight), min(maxBandwidth, other.maxBandwidth));
+    }
+
+    private static <T extends Comparable<T>> T min(T a, T b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.compareTo(b) <= 0 ? a : b;
+    }
+}
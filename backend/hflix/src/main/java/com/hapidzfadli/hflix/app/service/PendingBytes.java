@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.io.IOException;
+
+/**
+ * The bytes of an object that is still being fetched from storage. Readers stream what
+ * has arrived and wait for the rest.
+ */
+public interface PendingBytes {
+
+    /**
+     * Blocks until more than {@code position} bytes have arrived and returns how many
+     * have. Throws the fetch's failure once it has given up.
+     */
+    long awaitBeyond(long position) throws IOException;
+}
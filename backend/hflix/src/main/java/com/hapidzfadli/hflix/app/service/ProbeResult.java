@@ -0,0 +1,8 @@
+package com.hapidzfadli.hflix.app.service;
+
+/**
+ * Media properties reported by ffprobe for a stored original.
+ */
+public record ProbeResult(Double durationSeconds, Integer width, Integer height, String videoCodec,
+                          String audioCodec, Long bitRate) {
+}
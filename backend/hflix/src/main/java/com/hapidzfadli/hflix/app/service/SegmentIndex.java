@@ -0,0 +1,50 @@
+package com.hapidzfadli.hflix.app.service;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.util.List;
+
+/**
+ * Where every segment of a video's tracks sits in its fragmented MP4. Written next to the
+ * tracks at encode time as {@value #FILE_NAME}; HLS and DASH manifests are generated from
+ * it on request. Segments are serialized as {@code [duration, offset, length]} arrays to
+ * keep the index small.
+ */
+public record SegmentIndex(int version, double duration, List<Track> tracks) {
+
+    public static final String FILE_NAME = "index.json";
+    public static final int VERSION = 1;
+
+    /**
+     * One fragmented MP4. Video tracks have width and height, audio tracks channels and
+     * sample rate. Bandwidths are in bits per second, the peak over single segments.
+     */
+    public record Track(String name, Type type, String file, String codecs, Integer width, Integer height,
+                        Integer channels, Integer sampleRate, long bandwidth, long averageBandwidth,
+                        ByteRange init, List<Segment> segments) {
+
+        public double duration() {
+            return segments.stream().mapToDouble(Segment::duration).sum();
+        }
+    }
+
+    public enum Type {
+        VIDEO, AUDIO
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    public record ByteRange(long offset, long length) {
+
+        public long last() {
+            return offset + length - 1;
+        }
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    public record Segment(double duration, long offset, long length) {
+
+        public long last() {
+            return offset + length - 1;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Object storage for originals, encoded renditions and thumbnails. Keys are relative,
+ * slash separated paths such as {@code encoded/42/720p.mp4}. Missing keys surface as
+ * {@link java.nio.file.NoSuchFileException}.
+ */
+public interface StorageService {
+
+    StoredObject put(String key, Path source, String contentType) throws IOException;
+
+    /**
+     * Stores the stream under the key. The size may be -1 when it is not known up front,
+     * the stream is then read to its end.
+     */
+    StoredObject put(String key, InputStream data, long size, String contentType) throws IOException;
+
+    /**
+     * Stores the file and removes the source. Backends on the same disk rename it into
+     * place instead of copying.
+     */
+    default StoredObject move(String key, Path source, String contentType) throws IOException {
+        StoredObject stored = put(key, source, contentType);
+        Files.deleteIfExists(source);
+        return stored;
+    }
+
+    /**
+     * Stores a file whose key is never written again with other content. Backends that
+     * serve objects over HTTP mark it cacheable for good.
+     */
+    default StoredObject putImmutable(String key, Path source, String contentType) throws IOException {
+        return put(key, source, contentType);
+    }
+
+    void get(String key, Path target) throws IOException;
+
+    InputStream open(String key, long offset, long length) throws IOException;
+
+    Optional<StoredObject> stat(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * The file behind the key when the backend keeps objects on the local disk, so
+     * callers can serve it zero-copy.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * A location external tools such as ffprobe can read the object from directly: the
+     * file path for local objects, a short-lived presigned URL for remote ones.
+     */
+    default String readUrl(String key) throws IOException {
+        return localPath(key).map(Path::toString).orElseThrow(() -> new NoSuchFileException(key));
+    }
+}
@@ -0,0 +1,10 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.time.Instant;
+
+/**
+ * Metadata of an object in storage. The etag is backend specific and only meant for
+ * change detection.
+ */
+public record StoredObject(String key, long size, Instant lastModified, String etag, String contentType) {
+}
@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Files written by one transcode and what it cost. {@code cpuSeconds} is user plus system
+ * time of the ffmpeg process, {@code maxRssKb} its peak resident memory.
+ */
+public record TranscodeResult(List<Path> outputs, List<String> renditions, double outputSeconds,
+                              double cpuSeconds, long maxRssKb) {
+
+    public double cpuSecondsPerOutputMinute() {
+        return outputSeconds > 0 ? cpuSeconds / (outputSeconds / 60) : 0;
+    }
+}
@@ -0,0 +1,7 @@
+package com.hapidzfadli.hflix.app.service;
+
+/**
+ * A video on the trending list with its estimated views within the trending window.
+ */
+public record TrendingVideo(Long videoId, long views) {
+}
@@ -3,6 +3,9 @@ package com.hapidzfadli.hflix.app.service;
 import com.hapidzfadli.hflix.domain.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,12 +13,20 @@ import java.util.Optional;
 public interface UserService {
     List<User> findAllUsers();
     Page<User> findAllUsers(Pageable pageable);
+    Page<User> findAllUsers(String keyword, User.Status status, Pageable pageable);
+    Window<User> scrollUsers(String keyword, User.Status status, Sort sort, ScrollPosition position, int size);
+    long countUsers(String keyword, User.Status status);
+    long estimateUserCount();
     Optional<User> findById(Long id);
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
     User createUser (User user);
     User updateUser(Long id, User user);
     void deleteUser(Long id);
-    void updateLastLogin(String username);
+    void updateLastLogin(User user);
+    void updatePassword(String username, String encodedPassword);
     User changeUserStatus(Long id, User.Status status);
+    BulkImportResult importUsers(List<User> users);
+    int changeUsersStatus(List<Long> ids, User.Status status);
+    int deleteUsers(List<Long> ids);
 }
@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.app.service;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A stored rendition resolved for streaming. The path is set when the bytes sit on the
+ * local disk (local storage or the segment cache's disk tier) and can be served
+ * zero-copy, data is set when the segment cache holds them in memory. Pending is set
+ * while data is still being fetched. Otherwise all are null and the bytes are read from
+ * storage by key. For local files the ETag is the SHA-256 of the content, so it stays
+ * stable across restarts and nodes.
+ */
+public record VideoFile(String key, Path path, ByteBuffer data, PendingBytes pending, boolean cached, long length,
+                        long lastModified, String etag, String contentType) {
+}
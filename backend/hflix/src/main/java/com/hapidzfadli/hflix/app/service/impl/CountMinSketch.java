@@ -0,0 +1,58 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch over long keys: a fixed grid of counters, every key adds to one counter
+ * per row and its estimate is the smallest of them. Estimates never undercount. Not thread
+ * safe, the owner serializes access.
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counts;
+
+    CountMinSketch(int depth, int width) {
+        this.depth = Math.max(1, depth);
+        this.width = Integer.highestOneBit(Math.max(2, width) * 2 - 1);
+        this.counts = new long[this.depth * this.width];
+    }
+
+    void add(long key, long count) {
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + index(key, row)] += count;
+        }
+    }
+
+    long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + index(key, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Removes the counts of a sketch with the same dimensions, which must have been added
+     * to this one.
+     */
+    void subtract(CountMinSketch other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] -= other.counts[i];
+        }
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    // a differently seeded 64-bit finalizer per row
+    private int index(long key, int row) {
+        long hash = key + (row + 1) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) hash & (width - 1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.config.KafkaTopicProperties;
+import com.hapidzfadli.hflix.model.EncodingStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batches encoding status updates. ffmpeg reports progress several times a second per
+ * job, publishing each report would flood the status topic, so updates are coalesced per
+ * video (the newest wins) and flushed on an interval. The flushed records are sent back
+ * to back, letting the producer pack them into a few batches.
+ * <p>
+ * The latest status per video is also kept locally, which is all the in-process mode has.
+ */
+@Slf4j
+@Component
+public class EncodingStatusPublisher {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String topic;
+    private final Map<Long, EncodingStatus> pending = new ConcurrentHashMap<>();
+    private final Cache<Long, EncodingStatus> latest = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    public EncodingStatusPublisher(EncodingProperties properties, KafkaTopicProperties topics,
+                                   ObjectProvider<KafkaTemplate<String, Object>> kafkaTemplate) {
+        this.kafkaTemplate = "kafka".equals(properties.getQueue()) ? kafkaTemplate.getIfAvailable() : null;
+        this.topic = topics.getEncodingStatus();
+    }
+
+    public void publish(EncodingStatus status) {
+        pending.put(status.videoId(), status);
+        latest.put(status.videoId(), status);
+    }
+
+    public Optional<EncodingStatus> latest(Long videoId) {
+        return Optional.ofNullable(latest.getIfPresent(videoId));
+    }
+
+    @Scheduled(fixedDelayString = "${video.encoding.status-flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<EncodingStatus> batch = new ArrayList<>(pending.size());
+        for (Long videoId : pending.keySet()) {
+            EncodingStatus status = pending.remove(videoId);
+            if (status != null) {
+                batch.add(status);
+            }
+        }
+
+        if (kafkaTemplate == null) {
+            log.debug("Encoding status: {}", batch);
+            return;
+        }
+        for (EncodingStatus status : batch) {
+            kafkaTemplate.send(topic, status.videoId().toString(), status)
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            log.warn("Could not publish encoding status of video {}: {}", status.videoId(), error.getMessage());
+                        }
+                    });
+        }
+    }
+}
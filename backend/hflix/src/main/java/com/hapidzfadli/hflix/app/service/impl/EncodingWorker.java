@@ -0,0 +1,162 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.TranscodeResult;
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import com.hapidzfadli.hflix.model.EncodingJob;
+import com.hapidzfadli.hflix.model.EncodingStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs encoding jobs from either queue implementation. The number of jobs running at once
+ * is bounded by {@link #getSlots()}, the number of ffmpeg processes {@link FfmpegRunner}
+ * allows on this node. Queue consumers are sized to the same number, the semaphore only
+ * guards against misconfiguration.
+ * <p>
+ * Jobs are idempotent: a redelivered job for a video that is already ready is skipped.
+ */
+@Slf4j
+@Component
+public class EncodingWorker {
+
+    private final VideoRepository videoRepository;
+    private final StorageService storageService;
+    private final StorageLayout storageLayout;
+    private final VideoTranscoder transcoder;
+    private final SegmentCache segmentCache;
+    private final ManifestService manifestService;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final EncodingStatusPublisher statusPublisher;
+    private final EncodingProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Path workDir;
+
+    @Getter
+    private final int slots;
+    private final Semaphore permits;
+
+    public EncodingWorker(VideoRepository videoRepository, StorageService storageService, StorageLayout storageLayout,
+                          VideoTranscoder transcoder, SegmentCache segmentCache, ManifestService manifestService,
+                          ThumbnailGenerator thumbnailGenerator, FfmpegRunner runner, EncodingStatusPublisher statusPublisher, EncodingProperties properties,
+                          TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.videoRepository = videoRepository;
+        this.storageService = storageService;
+        this.storageLayout = storageLayout;
+        this.transcoder = transcoder;
+        this.segmentCache = segmentCache;
+        this.manifestService = manifestService;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.statusPublisher = statusPublisher;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.workDir = Paths.get(properties.getWorkDir()).toAbsolutePath().normalize();
+        this.slots = runner.getSlots();
+        this.permits = new Semaphore(slots);
+        Gauge.builder("video.encoding.jobs.active", permits, p -> slots - p.availablePermits())
+                .description("Encoding jobs running on this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the job to completion, retrying failed attempts. Returns once the video is
+     * ready or marked failed, the caller may then acknowledge the job.
+     */
+    public void process(EncodingJob job) throws InterruptedException {
+        permits.acquire();
+        try {
+            run(job);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void run(EncodingJob job) throws InterruptedException {
+        Optional<Video> found = videoRepository.findById(job.videoId());
+        if (found.isEmpty()) {
+            log.warn("Skipping encoding job for missing video {}", job.videoId());
+            return;
+        }
+        Video video = found.get();
+        if (video.getStatus() == Video.Status.READY || video.getSourceVideoId() != null) {
+            return;
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                encode(video);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= properties.getMaxAttempts()) {
+                    log.error("Encoding video {} failed after {} attempts", video.getId(), attempt, e);
+                    updateStatus(video.getId(), Video.Status.FAILED);
+                    statusPublisher.publish(EncodingStatus.of(video.getId(), EncodingStatus.State.FAILED, 0, e.getMessage()));
+                    return;
+                }
+                log.warn("Encoding video {} failed (attempt {}), retrying: {}", video.getId(), attempt, e.getMessage());
+                Thread.sleep(properties.getRetryBackoff().toMillis() * attempt);
+            }
+        }
+    }
+
+    private void encode(Video video) throws IOException {
+        Long videoId = video.getId();
+        updateStatus(videoId, Video.Status.PROCESSING);
+        statusPublisher.publish(EncodingStatus.of(videoId, EncodingStatus.State.PROCESSING, 0, null));
+
+        Path jobDir = workDir.resolve(videoId.toString());
+        FileSystemUtils.deleteRecursively(jobDir);
+        Files.createDirectories(jobDir);
+        try {
+            Optional<Path> local = storageService.localPath(video.getOriginalKey());
+            Path source = local.isPresent() ? local.get() : jobDir.resolve("source");
+            if (local.isEmpty()) {
+                storageService.get(video.getOriginalKey(), source);
+            }
+
+            Path outputDir = Files.createDirectories(jobDir.resolve("out"));
+            TranscodeResult result = transcoder.transcode(source, outputDir, progress ->
+                    statusPublisher.publish(EncodingStatus.of(videoId, EncodingStatus.State.PROCESSING, progress, null)));
+            // the index last, no manifest is generated before the tracks it points into are stored
+            List<Path> outputs = result.outputs().stream()
+                    .sorted(Comparator.comparing((Path path) -> path.endsWith(SegmentIndex.FILE_NAME)))
+                    .toList();
+            for (Path output : outputs) {
+                String fileName = outputDir.relativize(output).toString().replace('\\', '/');
+                String key = storageLayout.encoded(videoId, fileName);
+                storageService.move(key, output, VideoStreamingService.contentType(fileName));
+                // a re-encode replaces the files, other nodes pick it up on revalidation
+                segmentCache.invalidate(key);
+            }
+            manifestService.invalidate(videoId);
+
+            updateStatus(videoId, Video.Status.READY);
+            statusPublisher.publish(EncodingStatus.of(videoId, EncodingStatus.State.READY, 1, null));
+            thumbnailGenerator.submit(videoId);
+        } finally {
+            FileSystemUtils.deleteRecursively(jobDir);
+        }
+    }
+
+    // duplicates share the source's renditions, so they follow its status
+    private void updateStatus(Long videoId, Video.Status status) {
+        transactionTemplate.executeWithoutResult(tx -> videoRepository.updateStatusWithDuplicates(videoId, status));
+    }
+}
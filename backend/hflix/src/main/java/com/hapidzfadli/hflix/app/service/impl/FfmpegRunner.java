@@ -0,0 +1,193 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.config.FfmpegProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.DoubleConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs ffmpeg processes and bounds how many run on this node. The limit is the smaller of
+ * cores / {@code threads-per-job} and the memory outside the JVM heap / {@code memory-per-job},
+ * unless {@code video.encoding.workers} sets it. Whole-file encodes and the chunk encodes
+ * of a split job draw from the same permits, so a node never runs more ffmpeg processes
+ * than it can sustain. Background work ({@link #runBackground}) only takes a permit no
+ * encode is waiting for and runs niced.
+ */
+@Slf4j
+@Component
+public class FfmpegRunner {
+
+    private static final Pattern BENCH_CPU = Pattern.compile("bench: utime=([\\d.]+)s stime=([\\d.]+)s");
+    private static final Pattern BENCH_RSS = Pattern.compile("bench: maxrss=(\\d+)kB");
+    private static final Path NICE = Path.of("/usr/bin/nice");
+    private static final long BACKGROUND_POLL_MS = 500;
+
+    private final String binary;
+    @Getter
+    private final int slots;
+    private final Semaphore processes;
+
+    public FfmpegRunner(FfmpegProperties ffmpegProperties, EncodingProperties properties) {
+        this.binary = ffmpegProperties.getBinary().getPath();
+        this.slots = slots(properties);
+        this.processes = new Semaphore(slots);
+        log.info("Running up to {} ffmpeg processes at once", slots);
+    }
+
+    /**
+     * A builder that reports progress on stdout and CPU time and peak memory on stderr.
+     */
+    public FFmpegBuilder builder() {
+        return new FFmpegBuilder()
+                .setVerbosity(FFmpegBuilder.Verbosity.INFO)
+                .addExtraArgs("-nostats", "-benchmark")
+                .addProgress(URI.create("pipe:1"))
+                .overrideOutputFiles(true);
+    }
+
+    /**
+     * Runs the command once a process permit is free and waits for it to exit.
+     *
+     * @param stderrFile receives ffmpeg's log
+     * @param position   receives the output position in seconds as ffmpeg reports it, may be null
+     */
+    public Outcome run(FFmpegBuilder builder, Path stderrFile, DoubleConsumer position) throws IOException {
+        try {
+            processes.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an encoder slot");
+        }
+        return execute(command(builder, 0), stderrFile, position);
+    }
+
+    /**
+     * Runs the command below encodes: it waits until a permit is free with no encode
+     * queued for one, and the process runs at {@code niceness} where {@code nice} exists.
+     */
+    public Outcome runBackground(FFmpegBuilder builder, Path stderrFile, int niceness) throws IOException {
+        try {
+            // tryAcquire barges, so check the queue first to let waiting encodes go ahead
+            while (processes.hasQueuedThreads() || !processes.tryAcquire()) {
+                Thread.sleep(BACKGROUND_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an encoder slot");
+        }
+        return execute(command(builder, niceness), stderrFile, null);
+    }
+
+    private List<String> command(FFmpegBuilder builder, int niceness) {
+        List<String> command = new ArrayList<>();
+        if (niceness > 0 && Files.isExecutable(NICE)) {
+            command.addAll(List.of(NICE.toString(), "-n", String.valueOf(niceness)));
+        }
+        command.add(binary);
+        command.addAll(builder.build());
+        return command;
+    }
+
+    // caller holds a permit, it is released when the process is gone
+    private Outcome execute(List<String> command, Path stderrFile, DoubleConsumer position) throws IOException {
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectError(stderrFile.toFile())
+                    .start();
+            try (BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                readProgress(stdout, position);
+            }
+            int exit = process.waitFor();
+            String stderr = Files.readString(stderrFile);
+            if (exit != 0) {
+                throw new IOException("ffmpeg exited with " + exit + ": " + tail(stderr));
+            }
+            return new Outcome(cpuSeconds(stderr), maxRssKb(stderr));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running ffmpeg");
+        } finally {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            processes.release();
+        }
+    }
+
+    /**
+     * Reads the {@code key=value} blocks of {@code -progress}. Each block ends with a
+     * {@code progress=} line, the position is {@code out_time_us} (microseconds).
+     */
+    private static void readProgress(BufferedReader stdout, DoubleConsumer position) throws IOException {
+        long outTimeUs = 0;
+        String line;
+        while ((line = stdout.readLine()) != null) {
+            if (line.startsWith("out_time_us=")) {
+                try {
+                    outTimeUs = Long.parseLong(line.substring("out_time_us=".length()).trim());
+                } catch (NumberFormatException e) {
+                    // N/A until the first frame is out
+                }
+            } else if (line.startsWith("progress=") && position != null && outTimeUs > 0) {
+                position.accept(outTimeUs / 1e6);
+            }
+        }
+    }
+
+    private static double cpuSeconds(String stderr) {
+        Matcher matcher = BENCH_CPU.matcher(stderr);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) + Double.parseDouble(matcher.group(2)) : 0;
+    }
+
+    private static long maxRssKb(String stderr) {
+        Matcher matcher = BENCH_RSS.matcher(stderr);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static String tail(String stderr) {
+        String trimmed = stderr.strip();
+        return trimmed.length() <= 500 ? trimmed : trimmed.substring(trimmed.length() - 500);
+    }
+
+    private static int slots(EncodingProperties properties) {
+        if (properties.getWorkers() > 0) {
+            return properties.getWorkers();
+        }
+        int cpuSlots = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, properties.getThreadsPerJob()));
+        // container aware since JDK 14, the heap is not available to ffmpeg
+        long physical = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getTotalMemorySize();
+        long outsideHeap = physical - Runtime.getRuntime().maxMemory();
+        int memorySlots = (int) Math.max(1, outsideHeap / properties.getMemoryPerJob().toBytes());
+        return Math.min(cpuSlots, memorySlots);
+    }
+
+    /**
+     * CPU time (user plus system) and peak resident memory of one process.
+     */
+    public record Outcome(double cpuSeconds, long maxRssKb) {
+
+        public Outcome plus(Outcome other) {
+            return new Outcome(cpuSeconds + other.cpuSeconds, Math.max(maxRssKb, other.maxRssKb));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.EncodingQueue;
+import com.hapidzfadli.hflix.config.ExecutionMode;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import com.hapidzfadli.hflix.model.EncodingJob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Encoding queue for single-box installs and tests, no broker needed. Jobs live in memory,
+ * the video status is the durable record instead of a committed offset: on startup every
+ * video still uploaded or processing is queued again.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "video.encoding.queue", havingValue = "in-process")
+public class InProcessEncodingQueue implements EncodingQueue, DisposableBean {
+
+    private final EncodingWorker worker;
+    private final VideoRepository videoRepository;
+    private final BlockingQueue<EncodingJob> jobs = new LinkedBlockingQueue<>();
+    // videos queued or running, a second submit of the same video is dropped
+    private final Set<Long> active = ConcurrentHashMap.newKeySet();
+    private final ExecutorService consumers;
+
+    public InProcessEncodingQueue(EncodingWorker worker, VideoRepository videoRepository,
+                                  ExecutionMode executionMode, MeterRegistry meterRegistry) {
+        this.worker = worker;
+        this.videoRepository = videoRepository;
+        Gauge.builder("video.encoding.queue.depth", jobs, BlockingQueue::size)
+                .description("Encoding jobs waiting for a worker slot")
+                .register(meterRegistry);
+        // consumers wait on ffmpeg and storage, the worker's permits bound the jobs
+        this.consumers = Executors.newFixedThreadPool(worker.getSlots(), executionMode.threadFactory("encoding-worker-"));
+        for (int i = 0; i < worker.getSlots(); i++) {
+            consumers.execute(this::consume);
+        }
+    }
+
+    @Override
+    public void submit(EncodingJob job) {
+        if (active.add(job.videoId())) {
+            jobs.add(job);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void requeueUnfinished() {
+        List<Video> unfinished = videoRepository.findByStatusInAndSourceVideoIdIsNullOrderByIdAsc(
+                EnumSet.of(Video.Status.UPLOADED, Video.Status.PROCESSING));
+        unfinished.forEach(video -> submit(new EncodingJob(video.getId(), video.getOriginalKey(), Instant.now())));
+        if (!unfinished.isEmpty()) {
+            log.info("Queued {} unfinished encoding jobs", unfinished.size());
+        }
+    }
+
+    private void consume() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                EncodingJob job = jobs.take();
+                try {
+                    worker.process(job);
+                } catch (RuntimeException e) {
+                    log.error("Encoding job for video {} failed", job.videoId(), e);
+                } finally {
+                    active.remove(job.videoId());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        consumers.shutdownNow();
+    }
+}
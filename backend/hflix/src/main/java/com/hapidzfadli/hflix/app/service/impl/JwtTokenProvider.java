@@ -1,35 +1,59 @@
 package com.hapidzfadli.hflix.app.service.impl;
 
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hapidzfadli.hflix.api.exception.SampledErrorLogger;
 import com.hapidzfadli.hflix.config.JwtProperties;
 import com.hapidzfadli.hflix.domain.entity.User;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 import io.jsonwebtoken.security.Keys;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class JwtTokenProvider {
 
+    // expired or forged tokens arrive in bursts, keep them from flooding the log
+    private static final SampledErrorLogger sampledLog = new SampledErrorLogger(log, 20, 60_000);
+
     private final JwtProperties jwtProperties;
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
+
+    // verified tokens keyed by SHA-256 of the raw token, each entry dies with the token's exp claim,
+    // the least used ones are evicted once app.jwt.verified-cache-size is reached
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = jwtProperties.getSecret().getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    public JwtTokenProvider(JwtProperties jwtProperties) {
+        this.jwtProperties = jwtProperties;
+        this.signingKey = Keys.hmacShaKeyFor(jwtProperties.getSecret().getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, jwtProperties.getVerifiedCacheSize()))
+                .expireAfter(new UntilExpiration())
+                .build();
     }
 
     public String generateToken(User user){
@@ -44,27 +68,49 @@ public class JwtTokenProvider {
                 .claim("userId", user.getId())
                 .claim("email", user.getEmail())
                 .claim("role", user.getRole())
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
+    /**
+     * Verifies the token and builds the authentication in one pass. Tokens that were
+     * already verified are served from the cache until their expiration.
+     */
+    public Optional<Authentication> authenticate(String token) {
+        String key = digest(token);
+        long now = System.currentTimeMillis();
+
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            // the cache times entries with nanoTime, exp is wall clock time
+            return cached.expiresAt() > now ? Optional.of(cached.toAuthentication()) : Optional.empty();
+        }
+
+        try {
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
+            VerifiedToken verified = toVerifiedToken(claims);
+            if (verified == null) {
+                return Optional.empty();
+            }
+
+            if (verified.expiresAt() > now && jwtProperties.getVerifiedCacheSize() > 0) {
+                verifiedTokens.put(key, verified);
+            }
+            return Optional.of(verified.toAuthentication());
+        } catch (JwtException | IllegalArgumentException e) {
+            sampledLog.warn("InvalidJwt", "Invalid JWT token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     public Optional<Authentication> getAuthentication(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            String username  = claims.getSubject();
-            String role = claims.get("role", String.class);
-
-            if(username != null){
-                List<SimpleGrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role));
-                return Optional.of(new UsernamePasswordAuthenticationToken(username, null, authorities));
+            VerifiedToken verified = toVerifiedToken(jwtParser.parseClaimsJws(token).getBody());
+            if (verified != null) {
+                return Optional.of(verified.toAuthentication());
             }
         } catch (JwtException e){
-            log.error("Invalid JWT token: {}", e.getMessage());
+            sampledLog.warn("InvalidJwt", "Invalid JWT token: {}", e.getMessage());
         }
 
         return Optional.empty();
@@ -72,23 +118,66 @@ public class JwtTokenProvider {
 
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
+            jwtParser.parseClaimsJws(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
-            log.error("Invalid JWT token: {}", e.getMessage());
+            sampledLog.warn("InvalidJwt", "Invalid JWT token: {}", e.getMessage());
             return false;
         }
     }
 
     public String getUsernameFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
+        return jwtParser.parseClaimsJws(token)
                 .getBody()
                 .getSubject();
     }
+
+    private VerifiedToken toVerifiedToken(Claims claims) {
+        String username  = claims.getSubject();
+        if (username == null) {
+            return null;
+        }
+
+        String role = claims.get("role", String.class);
+        Long userId = claims.get("userId", Long.class);
+        Date expiration = claims.getExpiration();
+        List<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role));
+        return new VerifiedToken(new TokenPrincipal(userId, username), authorities,
+                expiration != null ? expiration.getTime() : 0L);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // each entry lives as long as its token, reads do not extend it
+    private static final class UntilExpiration implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, token.expiresAt() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private record VerifiedToken(TokenPrincipal principal, List<GrantedAuthority> authorities, long expiresAt) {
+
+        Authentication toAuthentication() {
+            return new UsernamePasswordAuthenticationToken(principal, null, authorities);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.EncodingQueue;
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.config.KafkaTopicProperties;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import com.hapidzfadli.hflix.model.EncodingJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Encoding queue on the {@code kafka.topic.encoding-queue} topic. Offsets are committed
+ * manually once the worker finished a job, so a job is redelivered to another consumer in
+ * the group when a node dies mid-encode.
+ * <p>
+ * A job that never reached the topic, a failed send or a node dying between the upload's
+ * commit and the send, leaves its video uploaded. Videos uploaded longer than
+ * {@code video.encoding.requeue-after} ago are sent again. Jobs are keyed by video, so a
+ * copy of a job still waiting in the topic lands on the same partition after it and is
+ * skipped by the worker once the video is ready.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "video.encoding.queue", havingValue = "kafka", matchIfMissing = true)
+public class KafkaEncodingQueue implements EncodingQueue {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaTopicProperties topics;
+    private final EncodingWorker worker;
+    private final VideoRepository videoRepository;
+    private final EncodingProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void submit(EncodingJob job) {
+        // keyed by video so retries of one video stay on one partition
+        kafkaTemplate.send(topics.getEncodingQueue(), job.videoId().toString(), job)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        log.error("Could not queue encoding of video {}, it is queued again after {}: {}",
+                                job.videoId(), properties.getRequeueAfter(), error.getMessage());
+                    }
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${video.encoding.requeue-interval-ms:60000}")
+    public void requeueStale() {
+        LocalDateTime before = LocalDateTime.now().minus(properties.getRequeueAfter());
+        List<Video> stale = videoRepository.findTop100ByStatusAndSourceVideoIdIsNullAndUpdatedAtBeforeOrderByIdAsc(
+                Video.Status.UPLOADED, before);
+        int queued = 0;
+        for (Video video : stale) {
+            // updated_at moves forward, so each video is sent at most once per requeue-after
+            Integer claimed = transactionTemplate.execute(tx -> videoRepository.touchIfStale(
+                    video.getId(), Video.Status.UPLOADED, before, LocalDateTime.now()));
+            if (claimed != null && claimed > 0) {
+                submit(new EncodingJob(video.getId(), video.getOriginalKey(), Instant.now()));
+                queued++;
+            }
+        }
+        if (queued > 0) {
+            log.info("Queued {} uploaded videos without an encoding job again", queued);
+        }
+    }
+
+    @KafkaListener(id = "encoding-worker", topics = "${kafka.topic.encoding-queue}",
+            containerFactory = "encodingListenerContainerFactory")
+    public void consume(EncodingJob job, Acknowledgment acknowledgment) throws InterruptedException {
+        worker.process(job);
+        acknowledgment.acknowledge();
+    }
+}
@@ -0,0 +1,71 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.config.LastLoginProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for last-login timestamps. Logins only record the timestamp in
+ * memory, repeated logins of the same user are coalesced, and pending values are written
+ * periodically as one JDBC batch. The buffer is flushed once more on shutdown.
+ */
+@Slf4j
+@Component
+public class LastLoginBuffer {
+
+    private static final String UPDATE_SQL = "UPDATE users SET last_login = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    public LastLoginBuffer(LastLoginProperties properties, JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = properties.getBatchSize();
+    }
+
+    public void record(Long userId, LocalDateTime lastLogin) {
+        pending.merge(userId, lastLogin, (current, next) -> next.isAfter(current) ? next : current);
+    }
+
+    @Scheduled(fixedDelayString = "${app.last-login.flush-interval-ms:5000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, LocalDateTime>> batch = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, LocalDateTime> entry : pending.entrySet()) {
+            // only drain the value we write, a newer login stays queued for the next flush
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batchSize, (ps, entry) -> {
+                ps.setTimestamp(1, Timestamp.valueOf(entry.getValue()));
+                ps.setLong(2, entry.getKey());
+            });
+            log.debug("Flushed {} last-login updates", batch.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to flush {} last-login updates, will retry: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> record(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
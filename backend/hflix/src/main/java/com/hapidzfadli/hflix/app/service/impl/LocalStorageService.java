@@ -0,0 +1,206 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.config.StorageProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Filesystem backend for tests and single-node installs. Keys map to paths below
+ * {@code storage.local-root}. Writes go to a temp file in the target directory and are
+ * renamed into place, so readers never see a partial object. Every write also stores the
+ * object's SHA-256 in a {@value #HASH_SUFFIX} sidecar, streamed files use it as ETag.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "local")
+public class LocalStorageService implements StorageService {
+
+    static final String HASH_SUFFIX = ".sha256";
+    private static final long HASH_REGION_BYTES = 64L * 1024 * 1024;
+
+    private final Path root;
+    private final long partSize;
+
+    public LocalStorageService(StorageProperties properties) {
+        this.root = Paths.get(properties.getLocalRoot()).toAbsolutePath().normalize();
+        this.partSize = properties.getPartSize();
+    }
+
+    @Override
+    public StoredObject put(String key, Path source, String contentType) throws IOException {
+        Path target = resolve(key);
+        Path temp = tempFile(target);
+        try {
+            // copy_file_range/sendfile under the hood on Linux
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            return commit(key, temp, target, contentType, sha256(temp));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public StoredObject put(String key, InputStream data, long size, String contentType) throws IOException {
+        Path target = resolve(key);
+        Path temp = tempFile(target);
+        DigestInputStream digested = new DigestInputStream(data, sha256());
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 ReadableByteChannel in = Channels.newChannel(digested)) {
+                long position = 0;
+                long count;
+                while ((count = out.transferFrom(in, position, partSize)) > 0) {
+                    position += count;
+                }
+            }
+            return commit(key, temp, target, contentType, digested.getMessageDigest().digest());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public StoredObject move(String key, Path source, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(sidecar(target));
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeHash(target, sha256(target));
+        } catch (AtomicMoveNotSupportedException e) {
+            // staging on another filesystem, fall back to a copy into a temp file and rename
+            put(key, source, contentType);
+            Files.deleteIfExists(source);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        return new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant(), null, contentType);
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        Files.copy(existing(key), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(existing(key), StandardOpenOption.READ);
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        Path path = resolve(key);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant(),
+                    null, Files.probeContentType(path)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path path = resolve(key);
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(sidecar(path));
+    }
+
+    static Path sidecar(Path path) {
+        return path.resolveSibling(path.getFileName() + HASH_SUFFIX);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        Path path = resolve(key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    // the old sidecar goes first, it must never be taken for the new content
+    private StoredObject commit(String key, Path temp, Path target, String contentType, byte[] hash)
+            throws IOException {
+        Files.deleteIfExists(sidecar(target));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeHash(target, hash);
+        BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        return new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant(), null, contentType);
+    }
+
+    private Path existing(String key) throws NoSuchFileException {
+        Path path = resolve(key);
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(key);
+        }
+        return path;
+    }
+
+    // written after the object, so its mtime is not older than the object's
+    private static void writeHash(Path target, byte[] hash) {
+        try {
+            Files.writeString(sidecar(target), HexFormat.of().formatHex(hash), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            log.warn("Could not store the content hash of {}: {}", target, e.getMessage());
+        }
+    }
+
+    private static byte[] sha256(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_REGION_BYTES) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_REGION_BYTES, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Path tempFile(Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        return Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,379 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hapidzfadli.hflix.api.exception.VideoNotFoundException;
+import com.hapidzfadli.hflix.app.service.ManifestFilter;
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.app.service.VideoFile;
+import com.hapidzfadli.hflix.config.PackagingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Generates HLS and DASH manifests from a video's {@link SegmentIndex}, so each rendition
+ * is stored once as a fragmented MP4 and both protocols address its segments as byte
+ * ranges. {@value #MASTER_PLAYLIST} and {@value #DASH_MANIFEST} list the ladder after the
+ * request's {@link ManifestFilter}, {@code <track>.m3u8} is the media playlist of one
+ * track.
+ * <p>
+ * Indexes are kept for {@code video.packaging.index-ttl}, generated manifests by video,
+ * index version, file and the tracks the filter selects, each with the SHA-256 of its
+ * bytes as ETag. Filters selecting the same tracks share one manifest, and the cache is
+ * bounded by bytes, so arbitrary caps in requests cannot fill the heap. Videos
+ * packaged before indexes existed have none, their stored playlists are served instead.
+ */
+@Slf4j
+@Service
+public class ManifestService {
+
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+    public static final String DASH_MANIFEST = "manifest.mpd";
+
+    private static final String HLS_TYPE = "application/vnd.apple.mpegurl";
+    private static final String DASH_TYPE = "application/dash+xml";
+    private static final String AUDIO_GROUP = "audio";
+
+    private final StorageService storageService;
+    private final StorageLayout storageLayout;
+    private final ObjectMapper objectMapper;
+    private final PackagingProperties properties;
+    // empty for videos without an index, so legacy videos do not stat storage on every request
+    private final Cache<Long, Optional<StoredIndex>> indexes;
+    private final Cache<ManifestKey, Manifest> manifests;
+
+    public ManifestService(StorageService storageService, StorageLayout storageLayout, ObjectMapper objectMapper,
+                           PackagingProperties properties, MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.storageLayout = storageLayout;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(properties.getIndexCacheSize())
+                .expireAfterWrite(properties.getIndexTtl())
+                .recordStats()
+                .build();
+        this.manifests = Caffeine.newBuilder()
+                .maximumWeight(properties.getManifestCacheMemory().toBytes())
+                .weigher((ManifestKey key, Manifest manifest) -> manifest.bytes().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "segment-indexes");
+        CaffeineCacheMetrics.monitor(meterRegistry, manifests, "manifests");
+    }
+
+    public static boolean isManifest(String fileName) {
+        return fileName.endsWith(".m3u8") || fileName.endsWith(".mpd");
+    }
+
+    /**
+     * The named profile's caps tightened by the explicit ones. Unknown profiles add no cap.
+     */
+    public ManifestFilter filter(String profile, Integer maxHeight, Long maxBandwidth) {
+        ManifestFilter filter = new ManifestFilter(maxHeight, maxBandwidth);
+        PackagingProperties.Profile named = profile != null ? properties.getProfiles().get(profile) : null;
+        if (named != null) {
+            filter = filter.and(new ManifestFilter(named.getMaxHeight(), named.getMaxBandwidth()));
+        }
+        return filter;
+    }
+
+    /**
+     * The generated manifest, or empty when the video has no segment index.
+     */
+    public Optional<VideoFile> manifest(Long videoId, Long storageVideoId, String fileName, ManifestFilter filter)
+            throws IOException {
+        StoredIndex stored = index(storageVideoId).orElse(null);
+        if (stored == null) {
+            return Optional.empty();
+        }
+        // media playlists do not depend on the ladder
+        List<SegmentIndex.Track> ladder = fileName.equals(MASTER_PLAYLIST) || fileName.equals(DASH_MANIFEST)
+                ? videos(stored.index(), filter) : List.of();
+        ManifestKey key = new ManifestKey(storageVideoId, stored.version(), fileName,
+                ladder.stream().map(SegmentIndex.Track::name).toList());
+        Manifest manifest = manifests.getIfPresent(key);
+        if (manifest == null) {
+            String text = generate(stored.index(), fileName, ladder);
+            if (text == null) {
+                throw VideoNotFoundException.withFile(videoId, fileName);
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            manifest = new Manifest(bytes, "\"" + sha256(bytes) + "\"",
+                    fileName.endsWith(".mpd") ? DASH_TYPE : HLS_TYPE);
+            manifests.put(key, manifest);
+        }
+        return Optional.of(new VideoFile(storageLayout.encoded(storageVideoId, fileName), null,
+                ByteBuffer.wrap(manifest.bytes()).asReadOnlyBuffer(), null, false, manifest.bytes().length,
+                stored.lastModified(), manifest.etag(), manifest.contentType()));
+    }
+
+    /**
+     * The video's segment index, empty for videos packaged before indexes existed.
+     */
+    public Optional<SegmentIndex> segmentIndex(Long storageVideoId) throws IOException {
+        return index(storageVideoId).map(StoredIndex::index);
+    }
+
+    /**
+     * Drops the cached index after a (re-)encode on this node. Other nodes pick the new
+     * index up once their copy expires.
+     */
+    public void invalidate(Long storageVideoId) {
+        indexes.invalidate(storageVideoId);
+    }
+
+    private Optional<StoredIndex> index(Long storageVideoId) throws IOException {
+        try {
+            return indexes.get(storageVideoId, id -> {
+                try {
+                    return load(id);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Optional<StoredIndex> load(Long storageVideoId) throws IOException {
+        String key = storageLayout.encoded(storageVideoId, SegmentIndex.FILE_NAME);
+        StoredObject object = storageService.stat(key).orElse(null);
+        if (object == null) {
+            return Optional.empty();
+        }
+        SegmentIndex index;
+        try (InputStream in = storageService.open(key, 0, object.size())) {
+            index = objectMapper.readValue(in, SegmentIndex.class);
+        }
+        if (index.version() != SegmentIndex.VERSION) {
+            log.warn("Ignoring segment index of video {} with version {}", storageVideoId, index.version());
+            return Optional.empty();
+        }
+        long lastModified = object.lastModified().toEpochMilli();
+        // local storage has no etags, size and mtime identify the index there
+        String version = object.etag() != null ? object.etag() : object.size() + "-" + lastModified;
+        return Optional.of(new StoredIndex(index, version, lastModified));
+    }
+
+    private String generate(SegmentIndex index, String fileName, List<SegmentIndex.Track> ladder) {
+        if (fileName.equals(MASTER_PLAYLIST)) {
+            return masterPlaylist(index, ladder);
+        }
+        if (fileName.equals(DASH_MANIFEST)) {
+            return dashManifest(index, ladder);
+        }
+        return index.tracks().stream()
+                .filter(track -> fileName.equals(track.name() + ".m3u8"))
+                .findFirst()
+                .map(ManifestService::mediaPlaylist)
+                .orElse(null);
+    }
+
+    static String masterPlaylist(SegmentIndex index, List<SegmentIndex.Track> ladder) {
+        SegmentIndex.Track audio = audio(index);
+        StringBuilder out = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:7\n#EXT-X-INDEPENDENT-SEGMENTS\n");
+        if (audio != null) {
+            out.append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"").append(AUDIO_GROUP)
+                    .append("\",NAME=\"").append(audio.name())
+                    .append("\",DEFAULT=YES,AUTOSELECT=YES");
+            if (audio.channels() != null) {
+                out.append(",CHANNELS=\"").append(audio.channels()).append('"');
+            }
+            out.append(",URI=\"").append(audio.name()).append(".m3u8\"\n");
+        }
+        for (SegmentIndex.Track video : ladder) {
+            long bandwidth = video.bandwidth() + (audio != null ? audio.bandwidth() : 0);
+            long average = video.averageBandwidth() + (audio != null ? audio.averageBandwidth() : 0);
+            out.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
+                    .append(",AVERAGE-BANDWIDTH=").append(average);
+            if (video.width() != null && video.height() != null) {
+                out.append(",RESOLUTION=").append(video.width()).append('x').append(video.height());
+            }
+            out.append(",CODECS=\"").append(video.codecs());
+            if (audio != null) {
+                out.append(',').append(audio.codecs()).append("\",AUDIO=\"").append(AUDIO_GROUP);
+            }
+            out.append("\"\n").append(video.name()).append(".m3u8\n");
+        }
+        return out.toString();
+    }
+
+    private static String mediaPlaylist(SegmentIndex.Track track) {
+        long target = track.segments().stream()
+                .mapToLong(segment -> Math.round(segment.duration()))
+                .max()
+                .orElse(0);
+        StringBuilder out = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:7\n")
+                .append("#EXT-X-TARGETDURATION:").append(Math.max(1, target)).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n#EXT-X-PLAYLIST-TYPE:VOD\n#EXT-X-INDEPENDENT-SEGMENTS\n")
+                .append("#EXT-X-MAP:URI=\"").append(track.file()).append("\",BYTERANGE=\"")
+                .append(track.init().length()).append('@').append(track.init().offset()).append("\"\n");
+        for (SegmentIndex.Segment segment : track.segments()) {
+            out.append("#EXTINF:").append(String.format(Locale.ROOT, "%.6f", segment.duration())).append(",\n")
+                    .append("#EXT-X-BYTERANGE:").append(segment.length()).append('@').append(segment.offset())
+                    .append('\n').append(track.file()).append('\n');
+        }
+        return out.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    static String dashManifest(SegmentIndex index, List<SegmentIndex.Track> videos) {
+        double longest = videos.stream().mapToDouble(SegmentIndex.Track::duration).max().orElse(index.duration());
+        double segmentMax = index.tracks().stream()
+                .flatMap(track -> track.segments().stream())
+                .mapToDouble(SegmentIndex.Segment::duration)
+                .max()
+                .orElse(0);
+        StringBuilder out = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\"")
+                .append(" profiles=\"urn:mpeg:dash:profile:isoff-main:2011\"")
+                .append(" mediaPresentationDuration=\"").append(isoDuration(longest)).append('"')
+                .append(" minBufferTime=\"").append(isoDuration(segmentMax)).append("\">\n")
+                .append("  <Period id=\"0\" start=\"PT0S\">\n");
+
+        out.append("    <AdaptationSet id=\"0\" contentType=\"video\" mimeType=\"video/mp4\"")
+                .append(" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+        for (SegmentIndex.Track video : videos) {
+            out.append("      <Representation id=\"").append(video.name())
+                    .append("\" bandwidth=\"").append(video.bandwidth())
+                    .append("\" codecs=\"").append(video.codecs()).append('"');
+            if (video.width() != null && video.height() != null) {
+                out.append(" width=\"").append(video.width()).append("\" height=\"").append(video.height()).append('"');
+            }
+            out.append(">\n");
+            segmentList(out, video);
+            out.append("      </Representation>\n");
+        }
+        out.append("    </AdaptationSet>\n");
+
+        SegmentIndex.Track audio = audio(index);
+        if (audio != null) {
+            out.append("    <AdaptationSet id=\"1\" contentType=\"audio\" mimeType=\"audio/mp4\"")
+                    .append(" segmentAlignment=\"true\" startWithSAP=\"1\">\n")
+                    .append("      <Representation id=\"").append(audio.name())
+                    .append("\" bandwidth=\"").append(audio.bandwidth())
+                    .append("\" codecs=\"").append(audio.codecs()).append('"');
+            if (audio.sampleRate() != null) {
+                out.append(" audioSamplingRate=\"").append(audio.sampleRate()).append('"');
+            }
+            out.append(">\n");
+            if (audio.channels() != null) {
+                out.append("        <AudioChannelConfiguration")
+                        .append(" schemeIdUri=\"urn:mpeg:dash:23003:3:audio_channel_configuration:2011\"")
+                        .append(" value=\"").append(audio.channels()).append("\"/>\n");
+            }
+            segmentList(out, audio);
+            out.append("      </Representation>\n    </AdaptationSet>\n");
+        }
+        return out.append("  </Period>\n</MPD>\n").toString();
+    }
+
+    /**
+     * Segments as byte ranges of the track file, timed in milliseconds. Durations are
+     * taken between rounded start times so they do not drift, runs of equal durations
+     * collapse into one timeline entry.
+     */
+    private static void segmentList(StringBuilder out, SegmentIndex.Track track) {
+        out.append("        <BaseURL>").append(track.file()).append("</BaseURL>\n")
+                .append("        <SegmentList timescale=\"1000\">\n")
+                .append("          <Initialization range=\"").append(track.init().offset()).append('-')
+                .append(track.init().last()).append("\"/>\n")
+                .append("          <SegmentTimeline>\n");
+        double elapsed = 0;
+        long start = 0;
+        long runStart = 0;
+        long runDuration = -1;
+        int repeats = 0;
+        for (SegmentIndex.Segment segment : track.segments()) {
+            elapsed += segment.duration();
+            long end = Math.round(elapsed * 1000);
+            long duration = end - start;
+            if (duration == runDuration) {
+                repeats++;
+            } else {
+                timelineEntry(out, runStart, runDuration, repeats);
+                runStart = start;
+                runDuration = duration;
+                repeats = 0;
+            }
+            start = end;
+        }
+        timelineEntry(out, runStart, runDuration, repeats);
+        out.append("          </SegmentTimeline>\n");
+        for (SegmentIndex.Segment segment : track.segments()) {
+            out.append("          <SegmentURL mediaRange=\"").append(segment.offset()).append('-')
+                    .append(segment.last()).append("\"/>\n");
+        }
+        out.append("        </SegmentList>\n");
+    }
+
+    private static void timelineEntry(StringBuilder out, long start, long duration, int repeats) {
+        if (duration < 0) {
+            return;
+        }
+        out.append("            <S t=\"").append(start).append("\" d=\"").append(duration).append('"');
+        if (repeats > 0) {
+            out.append(" r=\"").append(repeats).append('"');
+        }
+        out.append("/>\n");
+    }
+
+    /**
+     * Video tracks the filter allows, lowest first. When it allows none the lowest one is
+     * kept, a player always gets something to play.
+     */
+    static List<SegmentIndex.Track> videos(SegmentIndex index, ManifestFilter filter) {
+        List<SegmentIndex.Track> videos = index.tracks().stream()
+                .filter(track -> track.type() == SegmentIndex.Type.VIDEO)
+                .toList();
+        List<SegmentIndex.Track> allowed = videos.stream().filter(filter::allows).toList();
+        return allowed.isEmpty() && !videos.isEmpty() ? List.of(videos.get(0)) : allowed;
+    }
+
+    private static SegmentIndex.Track audio(SegmentIndex index) {
+        return index.tracks().stream()
+                .filter(track -> track.type() == SegmentIndex.Type.AUDIO)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String isoDuration(double seconds) {
+        return String.format(Locale.ROOT, "PT%.3fS", seconds);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record StoredIndex(SegmentIndex index, String version, long lastModified) {
+    }
+
+    // the names of the selected video tracks, empty for media playlists
+    private record ManifestKey(Long storageVideoId, String indexVersion, String fileName, List<String> ladder) {
+    }
+
+    private record Manifest(byte[] bytes, String etag, String contentType) {
+    }
+}
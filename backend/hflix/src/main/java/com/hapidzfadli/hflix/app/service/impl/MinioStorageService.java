@@ -0,0 +1,397 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.config.ExecutionMode;
+import com.hapidzfadli.hflix.config.MinioProperties;
+import com.hapidzfadli.hflix.config.StorageProperties;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import io.minio.messages.Part;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MinIO / S3 backend. Objects larger than one part are moved as parallel multipart
+ * transfers: uploads fill pooled part buffers from the source and keep up to
+ * {@code storage.concurrency} parts in flight, downloads fetch byte ranges in parallel
+ * and write them at their offset in the target file.
+ * <p>
+ * The part buffers are allocated once and shared by all uploads, so heap use is bounded
+ * by part size times concurrency no matter how many transfers run.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
+public class MinioStorageService implements StorageService, DisposableBean {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int READ_URL_EXPIRY_MINUTES = 60;
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final MinioAsyncClient client;
+    private final String bucket;
+    private final int partSize;
+    private final BlockingQueue<byte[]> partBuffers;
+    private final ExecutorService downloadExecutor;
+    // bounds parallel range downloads in both execution modes, virtual threads are not pooled
+    private final Semaphore downloadPermits;
+
+    public MinioStorageService(MinioAsyncClient client, MinioProperties minioProperties,
+                               StorageProperties storageProperties, ExecutionMode executionMode) {
+        int concurrency = Math.max(1, storageProperties.getConcurrency());
+
+        this.client = client;
+        this.bucket = minioProperties.getBucketName();
+        this.partSize = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(MIN_PART_SIZE, storageProperties.getPartSize()));
+        this.partBuffers = new ArrayBlockingQueue<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            partBuffers.add(new byte[partSize]);
+        }
+        this.downloadExecutor = executionMode.blockingExecutor("storage-download-", concurrency);
+        this.downloadPermits = new Semaphore(concurrency);
+    }
+
+    @PostConstruct
+    void ensureBucket() {
+        try {
+            if (!client.bucketExists(BucketExistsArgs.builder().bucket(bucket).build()).get()) {
+                client.makeBucket(MakeBucketArgs.builder().bucket(bucket).build()).get();
+                log.info("Created storage bucket {}", bucket);
+            }
+        } catch (Exception e) {
+            // storage may come up after the app, transfers will report their own errors
+            log.warn("Could not verify storage bucket {}: {}", bucket, e.getMessage());
+        }
+    }
+
+    @Override
+    public StoredObject put(String key, Path source, String contentType) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return put(key, in, Files.size(source), contentType);
+        }
+    }
+
+    @Override
+    public StoredObject put(String key, InputStream data, long size, String contentType) throws IOException {
+        return put(key, data, contentType, Map.of());
+    }
+
+    @Override
+    public StoredObject putImmutable(String key, Path source, String contentType) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return put(key, in, contentType, Map.of(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL));
+        }
+    }
+
+    private StoredObject put(String key, InputStream data, String contentType, Map<String, String> extraHeaders)
+            throws IOException {
+        byte[] first = takeBuffer();
+        int read;
+        try {
+            read = data.readNBytes(first, 0, partSize);
+        } catch (IOException e) {
+            partBuffers.add(first);
+            throw e;
+        }
+
+        if (read < partSize) {
+            // fits in one part, a single PUT is cheaper than a multipart round trip
+            try {
+                ObjectWriteResponse response = execute("put", key, () -> client.putObject(PutObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(key)
+                        .stream(new ByteArrayInputStream(first, 0, read), read, -1)
+                        .contentType(contentType)
+                        .headers(extraHeaders)
+                        .build()).get());
+                return new StoredObject(key, read, null, response.etag(), contentType);
+            } finally {
+                partBuffers.add(first);
+            }
+        }
+
+        return putMultipart(key, first, data, contentType, extraHeaders);
+    }
+
+    private StoredObject putMultipart(String key, byte[] first, InputStream data, String contentType,
+                                      Map<String, String> extraHeaders) throws IOException {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put(HttpHeaders.CONTENT_TYPE, contentType);
+        }
+        extraHeaders.forEach(headers::put);
+
+        String uploadId;
+        try {
+            uploadId = execute("create multipart upload", key, () ->
+                    client.createMultipartUploadAsync(bucket, null, key, headers, null).get().result().uploadId());
+        } catch (IOException e) {
+            partBuffers.add(first);
+            throw e;
+        }
+
+        List<CompletableFuture<Part>> parts = new ArrayList<>();
+        long size = 0;
+        try {
+            byte[] buffer = first;
+            int length = partSize;
+            while (true) {
+                size += length;
+                parts.add(uploadPart(key, uploadId, parts.size() + 1, buffer, length));
+                failFast(key, parts);
+
+                buffer = takeBuffer();
+                try {
+                    length = data.readNBytes(buffer, 0, partSize);
+                } catch (IOException e) {
+                    partBuffers.add(buffer);
+                    throw e;
+                }
+                if (length == 0) {
+                    partBuffers.add(buffer);
+                    break;
+                }
+            }
+
+            Part[] completed = new Part[parts.size()];
+            for (int i = 0; i < completed.length; i++) {
+                completed[i] = join("upload part", key, parts.get(i));
+            }
+            ObjectWriteResponse response = execute("complete multipart upload", key, () ->
+                    client.completeMultipartUploadAsync(bucket, null, key, uploadId, completed, null, null).get());
+            return new StoredObject(key, size, null, response.etag(), contentType);
+        } catch (IOException | RuntimeException e) {
+            // not cancelled: a part in flight returns its buffer once the client is done sending it
+            awaitQuietly(parts);
+            abort(key, uploadId);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Part> uploadPart(String key, String uploadId, int partNumber, byte[] buffer, int length)
+            throws IOException {
+        try {
+            return client.uploadPartAsync(bucket, null, key, buffer, length, uploadId, partNumber, null, null)
+                    .thenApply(response -> new Part(partNumber, response.etag()))
+                    // the buffer goes back to the pool as soon as the part is on the wire
+                    .whenComplete((part, error) -> partBuffers.add(buffer));
+        } catch (Exception e) {
+            partBuffers.add(buffer);
+            throw failure("upload part", key, e);
+        }
+    }
+
+    private void failFast(String key, List<CompletableFuture<Part>> parts) throws IOException {
+        for (CompletableFuture<Part> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                join("upload part", key, part);
+            }
+        }
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<Part>> parts) {
+        for (CompletableFuture<Part> part : parts) {
+            part.handle((completed, error) -> null).join();
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            client.abortMultipartUploadAsync(bucket, null, key, uploadId, null, null).get();
+        } catch (Exception e) {
+            log.warn("Could not abort multipart upload {} of {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        long size = stat(key).orElseThrow(() -> new NoSuchFileException(key)).size();
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (size <= partSize) {
+                downloadRange(key, out, 0, size);
+                return;
+            }
+
+            List<CompletableFuture<Void>> ranges = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += partSize) {
+                long position = offset;
+                long length = Math.min(partSize, size - offset);
+                ranges.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        downloadPermits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(new InterruptedIOException("Interrupted while waiting for a download slot"));
+                    }
+                    try {
+                        downloadRange(key, out, position, length);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        downloadPermits.release();
+                    }
+                }, downloadExecutor));
+            }
+
+            try {
+                for (CompletableFuture<Void> range : ranges) {
+                    join("download", key, range);
+                }
+            } catch (IOException e) {
+                ranges.forEach(range -> range.cancel(false));
+                throw e;
+            }
+        }
+    }
+
+    // transferFrom reuses the JDK's per-thread direct buffer, no part-sized heap copy
+    private void downloadRange(String key, FileChannel out, long position, long length) throws IOException {
+        try (InputStream in = open(key, position, length);
+             ReadableByteChannel source = Channels.newChannel(in)) {
+            long written = 0;
+            while (written < length) {
+                long count = out.transferFrom(source, position + written, length - written);
+                if (count <= 0) {
+                    throw new IOException("Short read of " + key + " at " + (position + written));
+                }
+                written += count;
+            }
+        }
+    }
+
+    @Override
+    public InputStream open(String key, long offset, long length) throws IOException {
+        return execute("get", key, () -> client.getObject(GetObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .offset(offset)
+                .length(length)
+                .build()).get());
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        try {
+            StatObjectResponse response = execute("stat", key, () ->
+                    client.statObject(StatObjectArgs.builder().bucket(bucket).object(key).build()).get());
+            return Optional.of(new StoredObject(key, response.size(), response.lastModified().toInstant(),
+                    response.etag(), response.contentType()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        execute("delete", key, () ->
+                client.removeObject(RemoveObjectArgs.builder().bucket(bucket).object(key).build()).get());
+    }
+
+    @Override
+    public String readUrl(String key) throws IOException {
+        // signing is local, no round trip to the server
+        return execute("presign", key, () -> client.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                .method(Method.GET)
+                .bucket(bucket)
+                .object(key)
+                .expiry(READ_URL_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build()));
+    }
+
+    @Override
+    public void destroy() {
+        downloadExecutor.shutdownNow();
+    }
+
+    private byte[] takeBuffer() throws IOException {
+        try {
+            return partBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a transfer buffer");
+        }
+    }
+
+    private <T> T join(String action, String key, CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw failure(action, key, e);
+        }
+    }
+
+    private <T> T execute(String action, String key, MinioCall<T> call) throws IOException {
+        try {
+            return call.execute();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during storage " + action + " of " + key);
+        } catch (Exception e) {
+            throw failure(action, key, e);
+        }
+    }
+
+    private static IOException failure(String action, String key, Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ErrorResponseException response
+                && ("NoSuchKey".equals(response.errorResponse().code()) || "NoSuchObject".equals(response.errorResponse().code()))) {
+            return new NoSuchFileException(key);
+        }
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        return new IOException("Storage " + action + " failed for " + key, cause);
+    }
+
+    @FunctionalInterface
+    private interface MinioCall<T> {
+        T execute() throws Exception;
+    }
+}
@@ -0,0 +1,122 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.PendingBytes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One object being read from storage into a direct buffer. Every read is published as it
+ * lands, so the requests attached to the fetch stream the bytes before it completes.
+ * Only the fetching thread writes the buffer, readers see it through {@link #view()}.
+ * Waiting is on a lock rather than a monitor, a virtual thread parked here releases its
+ * carrier.
+ */
+final class OriginFetch implements PendingBytes {
+
+    private final ByteBuffer buffer;
+    private final long timeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progressed = lock.newCondition();
+    private long available;
+    private boolean complete;
+    private IOException failure;
+
+    OriginFetch(int size, long timeoutMillis) {
+        this.buffer = ByteBuffer.allocateDirect(size);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * The whole buffer, read-only. Only the first {@link #awaitBeyond} bytes are valid.
+     */
+    ByteBuffer view() {
+        return buffer.duplicate().clear().asReadOnlyBuffer();
+    }
+
+    /**
+     * Bytes fetched so far, for resuming after a failed attempt. Fetching thread only.
+     */
+    long filled() {
+        return buffer.position();
+    }
+
+    /**
+     * Reads the rest of the object from the stream, which starts at {@link #filled()}.
+     */
+    void readFrom(InputStream in) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Object ended after " + buffer.position() + " of " + buffer.capacity() + " bytes");
+            }
+            publish(buffer.position());
+        }
+    }
+
+    void complete() {
+        lock.lock();
+        try {
+            complete = true;
+            progressed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void fail(IOException e) {
+        lock.lock();
+        try {
+            if (!complete && failure == null) {
+                failure = e;
+                progressed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long awaitBeyond(long position) throws IOException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (available <= position && !complete && failure == null) {
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("No data from storage for " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                }
+                try {
+                    remaining = progressed.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for storage");
+                }
+            }
+            if (available > position || complete) {
+                return available;
+            }
+            throw new IOException("Fetching from storage failed: " + failure.getMessage(), failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(long count) {
+        lock.lock();
+        try {
+            available = count;
+            progressed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.api.exception.SampledErrorLogger;
+import com.hapidzfadli.hflix.config.PlaybackProperties;
+import com.hapidzfadli.hflix.domain.entity.PlaybackPosition;
+import com.hapidzfadli.hflix.domain.repository.PlaybackPositionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer for playback positions. A heartbeat only replaces the position of
+ * its user and video in memory, so however often players report, each position costs one
+ * row in the next batched upsert. Positions are grouped per user in shards keyed by user
+ * id, and every shard is flushed as its own batch.
+ * <p>
+ * A position stays in the buffer until its row is written, reads look here before the
+ * database and always see the latest value. A failed flush leaves the buffer as it is
+ * for the next one.
+ */
+@Slf4j
+@Component
+public class PlaybackPositionBuffer {
+
+    private static final SampledErrorLogger sampledLog = new SampledErrorLogger(log, 1, 60_000);
+
+    // assignments apply left to right, updated_at goes last so the others compare against the stored one
+    private static final String UPSERT_SQL = "INSERT INTO playback_positions " +
+            "(user_id, video_id, position_ms, duration_ms, updated_at) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "position_ms = CASE WHEN VALUES(updated_at) >= updated_at THEN VALUES(position_ms) ELSE position_ms END, " +
+            "duration_ms = CASE WHEN VALUES(updated_at) >= updated_at THEN VALUES(duration_ms) ELSE duration_ms END, " +
+            "updated_at = GREATEST(updated_at, VALUES(updated_at))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlaybackPositionRepository playbackPositionRepository;
+    private final int batchSize;
+    private final int maxPending;
+    // user id -> video id -> latest position not yet written
+    private final List<Map<Long, Map<Long, Position>>> shards;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Counter dropped;
+
+    public PlaybackPositionBuffer(PlaybackProperties properties, JdbcTemplate jdbcTemplate,
+                                  PlaybackPositionRepository playbackPositionRepository, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.playbackPositionRepository = playbackPositionRepository;
+        this.batchSize = properties.getBatchSize();
+        this.maxPending = properties.getMaxPending();
+        this.shards = new ArrayList<>(Math.max(1, properties.getShards()));
+        for (int i = 0; i < Math.max(1, properties.getShards()); i++) {
+            shards.add(new ConcurrentHashMap<>());
+        }
+
+        Gauge.builder("playback.positions.pending", pending, AtomicInteger::get)
+                .description("Playback positions waiting to be written")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("playback.heartbeats.dropped")
+                .description("Heartbeats dropped because the buffer was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Replaces the buffered position of the user and video. Returns false when the buffer
+     * is full and the video had no buffered position yet, the heartbeat is then dropped
+     * and the next one retries.
+     */
+    public boolean record(Long userId, Long videoId, long positionMs, Long durationMs) {
+        Position position = new Position(positionMs, durationMs, LocalDateTime.now());
+        boolean[] accepted = {true};
+        shard(userId).compute(userId, (id, videos) -> {
+            if (videos == null) {
+                videos = new ConcurrentHashMap<>();
+            }
+            if (videos.containsKey(videoId) || pending.get() < maxPending) {
+                if (videos.put(videoId, position) == null) {
+                    pending.incrementAndGet();
+                }
+            } else {
+                accepted[0] = false;
+            }
+            return videos.isEmpty() ? null : videos;
+        });
+
+        if (!accepted[0]) {
+            dropped.increment();
+            sampledLog.warn("PlaybackBufferFull", "Playback buffer full at {} positions, dropping heartbeats", maxPending);
+        }
+        return accepted[0];
+    }
+
+    public Optional<PlaybackPosition> find(Long userId, Long videoId) {
+        Map<Long, Position> videos = shard(userId).get(userId);
+        Position position = videos != null ? videos.get(videoId) : null;
+        if (position != null) {
+            return Optional.of(position.toEntity(userId, videoId));
+        }
+        return playbackPositionRepository.findById(new PlaybackPosition.Key(userId, videoId));
+    }
+
+    /**
+     * The user's most recently updated positions, newest first.
+     */
+    public List<PlaybackPosition> findRecent(Long userId, int limit) {
+        Map<Long, PlaybackPosition> byVideo = new HashMap<>();
+        playbackPositionRepository.findByUserIdOrderByUpdatedAtDesc(userId, PageRequest.of(0, limit))
+                .forEach(position -> byVideo.put(position.getVideoId(), position));
+        // buffered positions are newer than their rows
+        Map<Long, Position> videos = shard(userId).get(userId);
+        if (videos != null) {
+            videos.forEach((videoId, position) -> byVideo.put(videoId, position.toEntity(userId, videoId)));
+        }
+
+        return byVideo.values().stream()
+                .sorted(Comparator.comparing(PlaybackPosition::getUpdatedAt).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${app.playback.flush-interval-ms:5000}")
+    public void flush() {
+        for (Map<Long, Map<Long, Position>> shard : shards) {
+            if (!shard.isEmpty()) {
+                flush(shard);
+            }
+        }
+    }
+
+    private void flush(Map<Long, Map<Long, Position>> shard) {
+        List<PlaybackPosition> batch = new ArrayList<>();
+        shard.forEach((userId, videos) ->
+                videos.forEach((videoId, position) -> batch.add(position.toEntity(userId, videoId))));
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batchSize, (ps, row) -> {
+                ps.setLong(1, row.getUserId());
+                ps.setLong(2, row.getVideoId());
+                ps.setLong(3, row.getPositionMs());
+                if (row.getDurationMs() != null) {
+                    ps.setLong(4, row.getDurationMs());
+                } else {
+                    ps.setNull(4, Types.BIGINT);
+                }
+                ps.setTimestamp(5, Timestamp.valueOf(row.getUpdatedAt()));
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to flush {} playback positions, will retry: {}", batch.size(), e.getMessage());
+            return;
+        }
+
+        // only drop what was written, a newer heartbeat stays buffered for the next flush
+        for (PlaybackPosition row : batch) {
+            Position written = new Position(row.getPositionMs(), row.getDurationMs(), row.getUpdatedAt());
+            shard.computeIfPresent(row.getUserId(), (id, videos) -> {
+                if (videos.remove(row.getVideoId(), written)) {
+                    pending.decrementAndGet();
+                }
+                return videos.isEmpty() ? null : videos;
+            });
+        }
+        log.debug("Flushed {} playback positions", batch.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Map<Long, Map<Long, Position>> shard(Long userId) {
+        return shards.get(Math.floorMod(Long.hashCode(userId), shards.size()));
+    }
+
+    private record Position(long positionMs, Long durationMs, LocalDateTime updatedAt) {
+
+        PlaybackPosition toEntity(Long userId, Long videoId) {
+            return new PlaybackPosition(userId, videoId, positionMs, durationMs, updatedAt);
+        }
+    }
+}
@@ -0,0 +1,837 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.hapidzfadli.hflix.app.service.PendingBytes;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.config.ExecutionMode;
+import com.hapidzfadli.hflix.config.SegmentCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache for objects on remote storage, in practice HLS segments and
+ * playlists. A small set of titles gets most of the traffic, so most segment requests
+ * never reach object storage.
+ * <p>
+ * Tier one keeps objects in direct buffers outside the heap, bounded by total bytes.
+ * Caffeine's W-TinyLFU policy decides what stays, so a burst of one-off requests does
+ * not push out the titles most viewers are watching. Tier two is a local directory with
+ * LRU eviction. Its index is persisted on an interval and on shutdown, so a restarted
+ * node starts warm, each restored entry costs one stat against the origin. A disk hit
+ * is served by sendfile and promoted to memory in the background.
+ * <p>
+ * Entries carry the origin etag and are checked against the origin again after
+ * {@code revalidate-after}, so a re-encode is picked up.
+ * <p>
+ * Origin lookups are single-flight: while one is running for a key, later requests for
+ * the key attach to it instead of issuing their own, so a new release watched by
+ * thousands costs one stat and one GET per segment. Attached requests stream the bytes
+ * as they arrive. A failed fetch is retried with backoff, resuming where it stopped, and
+ * a final failure reaches every attached request.
+ * <p>
+ * Objects too large to cache whole, the single-file tracks of packaged videos, are
+ * cached by byte range instead: each requested range is an entry of its own, validated
+ * against the object's etag, which is looked up at most once per {@code revalidate-after}.
+ */
+@Slf4j
+@Component
+public class SegmentCache implements DisposableBean {
+
+    private static final String INDEX_FILE = "index.tsv";
+    // an evicted file may still be on its way out through sendfile
+    private static final long DELETE_GRACE_MS = 60_000;
+    private static final int LARGE_OBJECTS = 10_000;
+
+    private final boolean enabled;
+    private final StorageService storageService;
+    private final long maxObjectSize;
+    private final long revalidateAfterMs;
+    private final long diskCapacity;
+    private final Path diskDir;
+
+    private final Cache<String, Segment> memory;
+    // objects above the size limit, so serving their ranges does not stat the origin every time
+    private final Cache<String, StoredObject> largeObjects;
+    // access ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<>(1024, 0.75f, true);
+    // a lock rather than a monitor, a virtual thread waiting for it does not pin its carrier
+    private final ReentrantLock diskLock = new ReentrantLock();
+    private final Set<String> diskFiles = new HashSet<>();
+    private long diskBytes;
+    private boolean indexDirty;
+    private final Queue<PendingDelete> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor promoter;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ExecutorService fetcher;
+    // bounds concurrent origin fetches in both execution modes
+    private final Semaphore fetchPermits;
+    private final int fetchAttempts;
+    private final long fetchBackoffMs;
+    private final long fetchTimeoutMs;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter bypassed;
+    private final Counter coalesced;
+    private final Counter originFetches;
+    private final DistributionSummary requestsPerLookup;
+    private final KeyRate fetchRate = new KeyRate();
+    private final Counter bytesSaved;
+    private final Counter diskEvictions;
+
+    public SegmentCache(SegmentCacheProperties properties, StorageService storageService, MeterRegistry meterRegistry,
+                        ExecutionMode executionMode) throws IOException {
+        this.enabled = properties.isEnabled();
+        this.storageService = storageService;
+        this.maxObjectSize = Math.min(properties.getMaxObjectSize().toBytes(), Integer.MAX_VALUE - 8);
+        this.revalidateAfterMs = properties.getRevalidateAfter().toMillis();
+        this.diskCapacity = properties.getDiskSize().toBytes();
+        this.diskDir = Paths.get(properties.getDiskDir()).toAbsolutePath().normalize();
+        this.fetchAttempts = Math.max(1, properties.getFetchAttempts());
+        this.fetchBackoffMs = properties.getFetchBackoff().toMillis();
+        this.fetchTimeoutMs = properties.getFetchTimeout().toMillis();
+
+        Counter memoryEvictions = evictionCounter(meterRegistry, "memory");
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(properties.getMemorySize().toBytes())
+                .weigher((String key, Segment segment) -> (int) segment.length())
+                .evictionListener((String key, Segment segment, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        memoryEvictions.increment();
+                    }
+                })
+                .build();
+        this.largeObjects = Caffeine.newBuilder()
+                .maximumSize(LARGE_OBJECTS)
+                .expireAfterWrite(properties.getRevalidateAfter())
+                .build();
+        this.promoter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64),
+                new CustomizableThreadFactory("segment-cache-"), new ThreadPoolExecutor.DiscardPolicy());
+        // origin lookups block on storage I/O, not on CPU
+        this.fetcher = executionMode.blockingExecutor("segment-fetch-", properties.getFetchThreads());
+        this.fetchPermits = new Semaphore(properties.getFetchThreads());
+
+        this.memoryHits = requestCounter(meterRegistry, "memory");
+        this.diskHits = requestCounter(meterRegistry, "disk");
+        this.misses = requestCounter(meterRegistry, "miss");
+        this.bypassed = requestCounter(meterRegistry, "bypass");
+        this.coalesced = requestCounter(meterRegistry, "coalesced");
+        this.originFetches = Counter.builder("video.segment.cache.origin.fetches")
+                .description("Object GETs against storage, retries included")
+                .register(meterRegistry);
+        this.requestsPerLookup = DistributionSummary.builder("video.segment.cache.requests.per.lookup")
+                .description("Requests served by one single-flight origin lookup")
+                .register(meterRegistry);
+        // a per-key tag would be unbounded, the busiest key stands in for all of them
+        Gauge.builder("video.segment.cache.origin.fetches.per.key", fetchRate, KeyRate::busiest)
+                .description("Origin fetches per second of the busiest key over the last full second")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("video.segment.cache.bytes.saved")
+                .description("Bytes served from the segment cache instead of object storage")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.diskEvictions = evictionCounter(meterRegistry, "disk");
+        Gauge.builder("video.segment.cache.size", memory,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .tag("tier", "memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("video.segment.cache.size", this, SegmentCache::diskBytes)
+                .tag("tier", "disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("video.segment.cache.hit.ratio", this, SegmentCache::hitRatio)
+                .description("Share of lookups answered without a fetch of their own")
+                .register(meterRegistry);
+
+        if (enabled) {
+            restoreIndex();
+        }
+    }
+
+    /**
+     * A cached copy that was checked against the origin recently, or empty when the
+     * caller has to stat the origin and call {@link #load}.
+     */
+    public Optional<Segment> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        Segment cached = memory.getIfPresent(key);
+        if (cached != null) {
+            if (now - cached.verifiedAt() >= revalidateAfterMs) {
+                return Optional.empty();
+            }
+            memoryHits.increment();
+            return Optional.of(cached);
+        }
+
+        DiskEntry entry;
+        diskLock.lock();
+        try {
+            entry = disk.get(key);
+            indexDirty |= entry != null;
+        } finally {
+            diskLock.unlock();
+        }
+        if (entry == null || now - entry.verifiedAt() >= revalidateAfterMs) {
+            return Optional.empty();
+        }
+        diskHits.increment();
+        return Optional.of(fromDisk(key, entry));
+    }
+
+    /**
+     * Looks the object up at the origin. At most one lookup runs per key, requests that
+     * arrive meanwhile attach to it. A stale copy whose etag still matches is marked
+     * verified, anything else is fetched whole into both tiers and the returned segment
+     * fills while it is streamed. The lookup has no segment when the object is missing
+     * or too large to cache, the caller proxies it then or asks for a {@link #range}.
+     */
+    public Lookup load(String key) throws IOException {
+        if (!enabled) {
+            return new Lookup(storageService.stat(key).orElse(null), null);
+        }
+        StoredObject large = largeObjects.getIfPresent(key);
+        if (large != null) {
+            bypassed.increment();
+            return new Lookup(large, null);
+        }
+        return board(new Flight(key, key, 0, null));
+    }
+
+    /**
+     * Bytes {@code start} to {@code end} of an object {@link #load} found too large to
+     * cache whole, cached as an entry of their own. Empty when the range is too large
+     * itself or the object was not looked up recently, the caller proxies it then.
+     */
+    public Optional<Segment> range(String key, long start, long end) throws IOException {
+        StoredObject object = enabled && end - start < maxObjectSize ? largeObjects.getIfPresent(key) : null;
+        if (object == null) {
+            return Optional.empty();
+        }
+        String rangeKey = key + "#" + start + "-" + end;
+        StoredObject range = new StoredObject(rangeKey, end - start + 1, object.lastModified(), object.etag(),
+                object.contentType());
+        Optional<Segment> cached = get(rangeKey);
+        if (cached.isPresent() && cached.get().matches(range)) {
+            return cached;
+        }
+        return Optional.ofNullable(board(new Flight(rangeKey, key, start, range)).segment());
+    }
+
+    // joins the flight already running for the key or starts this one
+    private Lookup board(Flight created) throws IOException {
+        String key = created.key;
+        Flight flight = flights.putIfAbsent(key, created);
+        if (flight == null) {
+            flight = created;
+            try {
+                fetcher.execute(() -> flyWithPermit(created));
+            } catch (RejectedExecutionException e) {
+                flights.remove(key, created);
+                throw new IOException("Segment fetcher is shut down", e);
+            }
+        } else {
+            flight.attached.incrementAndGet();
+            coalesced.increment();
+        }
+        return flight.await(fetchTimeoutMs);
+    }
+
+    public void invalidate(String key) {
+        if (!enabled) {
+            return;
+        }
+        // cached ranges carry the old etag, they stop matching once the object is looked up again
+        largeObjects.invalidate(key);
+        Flight flight = flights.remove(key);
+        if (flight != null) {
+            // an older version may still be arriving, it must not land in the cache
+            flight.invalidated = true;
+        }
+        drop(key);
+    }
+
+    private void drop(String key) {
+        memory.invalidate(key);
+        diskLock.lock();
+        try {
+            DiskEntry removed = disk.remove(key);
+            if (removed != null) {
+                dropFile(removed);
+                indexDirty = true;
+            }
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    /**
+     * Records bytes that went to a client from the cache rather than from object storage.
+     */
+    public void served(long bytes) {
+        bytesSaved.increment(bytes);
+    }
+
+    /**
+     * Deletes evicted files once their grace period is over and persists the disk index
+     * when it changed.
+     */
+    @Scheduled(fixedDelayString = "${video.segment-cache.index-flush-interval-ms:30000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        long due = System.currentTimeMillis() - DELETE_GRACE_MS;
+        for (PendingDelete pending = pendingDeletes.peek();
+             pending != null && pending.evictedAt() <= due;
+             pending = pendingDeletes.peek()) {
+            pendingDeletes.poll();
+            diskLock.lock();
+            try {
+                // the same object may have been cached again in the meantime
+                if (diskFiles.contains(pending.fileName())) {
+                    continue;
+                }
+            } finally {
+                diskLock.unlock();
+            }
+            try {
+                Files.deleteIfExists(diskDir.resolve(pending.fileName()));
+            } catch (IOException e) {
+                log.debug("Could not delete cached file {}: {}", pending.fileName(), e.getMessage());
+            }
+        }
+
+        List<String> lines;
+        diskLock.lock();
+        try {
+            if (!indexDirty) {
+                return;
+            }
+            lines = new ArrayList<>(disk.size());
+            for (Map.Entry<String, DiskEntry> entry : disk.entrySet()) {
+                DiskEntry value = entry.getValue();
+                lines.add(String.join("\t", value.fileName(), Long.toString(value.length()),
+                        Long.toString(value.lastModified()), Long.toString(value.verifiedAt()), value.etag(),
+                        entry.getKey()));
+            }
+            indexDirty = false;
+        } finally {
+            diskLock.unlock();
+        }
+        try {
+            Path temp = diskDir.resolve(INDEX_FILE + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, diskDir.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not persist the segment cache index: {}", e.getMessage());
+            diskLock.lock();
+            try {
+                indexDirty = true;
+            } finally {
+                diskLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        promoter.shutdownNow();
+        fetcher.shutdownNow();
+        flush();
+    }
+
+    private void flyWithPermit(Flight flight) {
+        try {
+            fetchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flight.result.completeExceptionally(new InterruptedIOException("Interrupted while waiting for a fetch permit"));
+            flights.remove(flight.key, flight);
+            return;
+        }
+        try {
+            fly(flight);
+        } finally {
+            fetchPermits.release();
+        }
+    }
+
+    private void fly(Flight flight) {
+        String key = flight.key;
+        OriginFetch body = null;
+        try {
+            // a range is checked against the object's etag by the caller, it needs no stat of its own
+            StoredObject current = flight.known != null
+                    ? flight.known
+                    : withRetry(key, () -> storageService.stat(key)).orElse(null);
+            if (current == null) {
+                drop(key);
+                flight.result.complete(new Lookup(null, null));
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Segment verified = revalidate(key, current, now);
+            if (verified != null) {
+                flight.result.complete(new Lookup(current, verified));
+                return;
+            }
+
+            drop(key);
+            if (current.size() > maxObjectSize) {
+                largeObjects.put(key, current);
+                bypassed.increment();
+                flight.result.complete(new Lookup(current, null));
+                return;
+            }
+            misses.increment();
+            int size = (int) current.size();
+            long lastModified = current.lastModified().toEpochMilli();
+            body = new OriginFetch(size, fetchTimeoutMs);
+            flight.result.complete(new Lookup(current,
+                    new Segment(body.view(), null, size, lastModified, current.etag(), now, body)));
+
+            fetchBody(flight, current, body);
+            if (!flight.invalidated) {
+                Segment segment = new Segment(body.view(), null, size, lastModified, current.etag(), now, null);
+                memory.put(key, segment);
+                try {
+                    store(key, segment);
+                } catch (IOException e) {
+                    // the memory copy still serves this request and the next ones
+                    log.warn("Could not write {} to the disk cache: {}", key, e.getMessage());
+                }
+            }
+            body.complete();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fetching {} from storage failed: {}", key, e.getMessage());
+            IOException failure = e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+            flight.result.completeExceptionally(failure);
+            if (body != null) {
+                body.fail(failure);
+            }
+        } finally {
+            // never leave attached requests waiting, whatever went wrong
+            IOException aborted = new IOException("Lookup of " + key + " was aborted");
+            flight.result.completeExceptionally(aborted);
+            if (body != null) {
+                body.fail(aborted);
+            }
+            flights.remove(key, flight);
+            requestsPerLookup.record(flight.attached.get());
+        }
+    }
+
+    private Segment revalidate(String key, StoredObject current, long now) {
+        Segment cached = memory.getIfPresent(key);
+        if (cached != null && cached.matches(current)) {
+            Segment verified = cached.verified(now);
+            memory.put(key, verified);
+            verifyDisk(key, current, now);
+            memoryHits.increment();
+            return verified;
+        }
+        DiskEntry entry = verifyDisk(key, current, now);
+        if (entry != null) {
+            diskHits.increment();
+            return fromDisk(key, entry);
+        }
+        return null;
+    }
+
+    private void fetchBody(Flight flight, StoredObject object, OriginFetch body) throws IOException {
+        if (object.size() == 0) {
+            return;
+        }
+        String key = flight.source;
+        for (int attempt = 1; ; attempt++) {
+            originFetches.increment();
+            fetchRate.record(flight.key);
+            long offset = body.filled();
+            try (InputStream in = storageService.open(key, flight.offset + offset, object.size() - offset)) {
+                body.readFrom(in);
+                return;
+            } catch (IOException e) {
+                if (attempt >= fetchAttempts) {
+                    throw e;
+                }
+                log.debug("Fetching {} failed at byte {} (attempt {}), retrying: {}", key, body.filled(), attempt,
+                        e.getMessage());
+                backoff(attempt);
+                // resuming mid-object is only safe while the object is unchanged
+                StoredObject current = storageService.stat(key).orElseThrow(() -> new NoSuchFileException(key));
+                if (!object.etag().equals(current.etag())) {
+                    throw new IOException(key + " changed while it was fetched");
+                }
+            }
+        }
+    }
+
+    private <T> T withRetry(String key, OriginCall<T> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                if (attempt >= fetchAttempts) {
+                    throw e;
+                }
+                log.debug("Looking up {} failed (attempt {}), retrying: {}", key, attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(fetchBackoffMs << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private void store(String key, Segment segment) throws IOException {
+        // the etag is part of the name, a newer version never overwrites a file in flight
+        String fileName = fileName(key, segment.etag());
+        Path temp = Files.createTempFile(diskDir, fileName, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer source = segment.data().duplicate();
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            Files.move(temp, diskDir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        diskLock.lock();
+        try {
+            DiskEntry previous = disk.put(key, new DiskEntry(fileName, segment.length(), segment.lastModified(),
+                    segment.etag(), segment.verifiedAt()));
+            if (previous != null) {
+                diskBytes -= previous.length();
+                if (!previous.fileName().equals(fileName)) {
+                    dropFile(previous);
+                }
+            }
+            diskFiles.add(fileName);
+            diskBytes += segment.length();
+            evictDisk();
+            indexDirty = true;
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    // caller holds the disk lock
+    private void evictDisk() {
+        Iterator<DiskEntry> eldest = disk.values().iterator();
+        while (diskBytes > diskCapacity && eldest.hasNext()) {
+            DiskEntry entry = eldest.next();
+            eldest.remove();
+            diskBytes -= entry.length();
+            dropFile(entry);
+            diskEvictions.increment();
+        }
+    }
+
+    // caller holds the disk lock
+    private void dropFile(DiskEntry entry) {
+        diskFiles.remove(entry.fileName());
+        pendingDeletes.add(new PendingDelete(entry.fileName(), System.currentTimeMillis()));
+    }
+
+    private DiskEntry verifyDisk(String key, StoredObject current, long now) {
+        diskLock.lock();
+        try {
+            DiskEntry entry = disk.get(key);
+            if (entry == null || !entry.etag().equals(current.etag()) || entry.length() != current.size()) {
+                return null;
+            }
+            DiskEntry verified = new DiskEntry(entry.fileName(), entry.length(), entry.lastModified(), entry.etag(), now);
+            disk.put(key, verified);
+            indexDirty = true;
+            return verified;
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    private Segment fromDisk(String key, DiskEntry entry) {
+        Path path = diskDir.resolve(entry.fileName());
+        promoter.execute(() -> promote(key, entry, path));
+        return new Segment(null, path, entry.length(), entry.lastModified(), entry.etag(), entry.verifiedAt(), null);
+    }
+
+    // the memory tier's admission policy decides whether the copy is kept
+    private void promote(String key, DiskEntry entry, Path path) {
+        if (memory.getIfPresent(key) != null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocateDirect((int) entry.length());
+            while (data.hasRemaining()) {
+                if (channel.read(data, data.position()) < 0) {
+                    throw new EOFException("Cached file is shorter than its index entry");
+                }
+            }
+            data.flip();
+            memory.put(key, new Segment(data.asReadOnlyBuffer(), null, entry.length(), entry.lastModified(),
+                    entry.etag(), entry.verifiedAt(), null));
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile
+        } catch (IOException e) {
+            log.debug("Could not promote {} to memory: {}", key, e.getMessage());
+        }
+    }
+
+    private void restoreIndex() throws IOException {
+        Files.createDirectories(diskDir);
+        Path index = diskDir.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 6);
+                if (fields.length < 6) {
+                    continue;
+                }
+                try {
+                    Path file = diskDir.resolve(fields[0]);
+                    long length = Long.parseLong(fields[1]);
+                    if (!Files.isRegularFile(file) || Files.size(file) != length) {
+                        continue;
+                    }
+                    // file order is eldest first, so inserting in order restores the LRU order; the
+                    // origin may have changed while the node was down, so every entry is revalidated
+                    disk.put(fields[5], new DiskEntry(fields[0], length, Long.parseLong(fields[2]), fields[4], 0));
+                    diskFiles.add(fields[0]);
+                    diskBytes += length;
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping malformed segment cache index line: {}", line);
+                }
+            }
+        }
+
+        // leftovers of interrupted writes and files evicted before the last shutdown
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.equals(INDEX_FILE) && !diskFiles.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        evictDisk();
+        log.info("Segment cache restored {} objects ({} bytes) from {}", disk.size(), diskBytes, diskDir);
+    }
+
+    private long diskBytes() {
+        diskLock.lock();
+        try {
+            return diskBytes;
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + diskHits.count() + coalesced.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("video.segment.cache.requests")
+                .description("Segment cache lookups by the tier that answered")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String tier) {
+        return Counter.builder("video.segment.cache.evictions")
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+
+    private static String fileName(String key, String etag) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(etag.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 20);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A cached object. Memory hits carry the bytes in {@code data}, disk hits the cached
+     * file in {@code path}. While the object is still being fetched, {@code pending}
+     * tells how much of {@code data} has arrived.
+     */
+    public record Segment(ByteBuffer data, Path path, long length, long lastModified, String etag, long verifiedAt,
+                          PendingBytes pending) {
+
+        boolean matches(StoredObject object) {
+            return etag.equals(object.etag()) && length == object.size();
+        }
+
+        Segment verified(long now) {
+            return new Segment(data, path, length, lastModified, etag, now, pending);
+        }
+    }
+
+    /**
+     * Result of an origin lookup: the object, null when it does not exist, and the
+     * segment to serve it from, null when the caller has to proxy it.
+     */
+    public record Lookup(StoredObject object, Segment segment) {
+    }
+
+    /**
+     * One origin lookup. {@code key} is the cache key, {@code source} the storage key the
+     * bytes are read from starting at {@code offset}; they differ for ranges, which also
+     * come with their {@code known} metadata.
+     */
+    private static final class Flight {
+
+        private final String key;
+        private final String source;
+        private final long offset;
+        private final StoredObject known;
+        private final CompletableFuture<Lookup> result = new CompletableFuture<>();
+        private final AtomicInteger attached = new AtomicInteger(1);
+        private volatile boolean invalidated;
+
+        private Flight(String key, String source, long offset, StoredObject known) {
+            this.key = key;
+            this.source = source;
+            this.offset = offset;
+            this.known = known;
+        }
+
+        Lookup await(long timeoutMs) throws IOException {
+            try {
+                return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + key);
+            } catch (ExecutionException e) {
+                throw new IOException("Looking up " + key + " failed: " + e.getCause().getMessage(), e.getCause());
+            } catch (TimeoutException e) {
+                throw new IOException("Timed out looking up " + key);
+            }
+        }
+    }
+
+    /**
+     * Origin fetches per key within the current second. Reports the busiest key of the
+     * last full second, which stays at one while coalescing works.
+     */
+    private static final class KeyRate {
+
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private long second;
+        private int busiest;
+
+        void record(String key) {
+            lock.lock();
+            try {
+                roll(System.currentTimeMillis() / 1000);
+                counts.merge(key, 1, Integer::sum);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double busiest() {
+            lock.lock();
+            try {
+                roll(System.currentTimeMillis() / 1000);
+                return busiest;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void roll(long now) {
+            if (now == second) {
+                return;
+            }
+            busiest = now == second + 1 ? counts.values().stream().mapToInt(Integer::intValue).max().orElse(0) : 0;
+            counts.clear();
+            second = now;
+        }
+    }
+
+    @FunctionalInterface
+    private interface OriginCall<T> {
+        T call() throws IOException;
+    }
+
+    private record DiskEntry(String fileName, long length, long lastModified, String etag, long verifiedAt) {
+    }
+
+    private record PendingDelete(String fileName, long evictedAt) {
+    }
+}
@@ -0,0 +1,285 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Builds the {@link SegmentIndex} of a packaged video from the byte-range playlists ffmpeg
+ * writes next to each single-file track, then drops those playlists: manifests are
+ * generated from the index on request. Codec strings, dimensions and audio layout are
+ * read from each track's init segment, ffmpeg's own master playlist is not trusted for
+ * them.
+ */
+@Component
+public class SegmentIndexer {
+
+    private static final Pattern MAP = Pattern.compile("URI=\"([^\"]+)\"(?:,BYTERANGE=\"(\\d+)@(\\d+)\")?");
+    private static final Pattern BYTE_RANGE = Pattern.compile("(\\d+)(?:@(\\d+))?");
+    private static final Set<String> CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "stbl");
+    // shorter segments (the tail of an audio track) would overstate the peak bitrate
+    private static final double MIN_PEAK_SEGMENT_SECONDS = 1.0;
+
+    private final ObjectMapper objectMapper;
+
+    public SegmentIndexer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Indexes every {@code <track>.m3u8} in {@code outputDir}, writes
+     * {@value SegmentIndex#FILE_NAME} there and deletes the playlists.
+     */
+    public SegmentIndex index(Path outputDir, double duration) throws IOException {
+        List<Path> playlists;
+        try (Stream<Path> files = Files.list(outputDir)) {
+            playlists = files.filter(file -> file.getFileName().toString().endsWith(".m3u8")).sorted().toList();
+        }
+        if (playlists.isEmpty()) {
+            throw new IOException("No playlists to index in " + outputDir);
+        }
+
+        List<SegmentIndex.Track> tracks = new ArrayList<>();
+        for (Path playlist : playlists) {
+            tracks.add(track(outputDir, playlist));
+        }
+        tracks.sort(Comparator.comparing(SegmentIndex.Track::type)
+                .thenComparing(track -> track.height() != null ? track.height() : 0));
+
+        SegmentIndex index = new SegmentIndex(SegmentIndex.VERSION, duration, List.copyOf(tracks));
+        objectMapper.writeValue(outputDir.resolve(SegmentIndex.FILE_NAME).toFile(), index);
+        for (Path playlist : playlists) {
+            Files.delete(playlist);
+        }
+        return index;
+    }
+
+    private SegmentIndex.Track track(Path outputDir, Path playlist) throws IOException {
+        String name = playlist.getFileName().toString().replaceFirst("\\.m3u8$", "");
+        String file = null;
+        SegmentIndex.ByteRange init = null;
+        List<SegmentIndex.Segment> segments = new ArrayList<>();
+        double duration = 0;
+        long nextOffset = 0;
+
+        for (String line : Files.readAllLines(playlist, StandardCharsets.UTF_8)) {
+            if (line.startsWith("#EXT-X-MAP:")) {
+                Matcher map = MAP.matcher(line);
+                if (!map.find() || map.group(2) == null) {
+                    throw new IOException(playlist.getFileName() + " is not a single-file playlist");
+                }
+                file = map.group(1);
+                init = new SegmentIndex.ByteRange(Long.parseLong(map.group(3)), Long.parseLong(map.group(2)));
+                nextOffset = init.offset() + init.length();
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring("#EXTINF:".length());
+                int comma = value.indexOf(',');
+                duration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                Matcher range = BYTE_RANGE.matcher(line.substring("#EXT-X-BYTERANGE:".length()));
+                if (!range.matches()) {
+                    throw new IOException("Malformed byte range in " + playlist.getFileName() + ": " + line);
+                }
+                long length = Long.parseLong(range.group(1));
+                long offset = range.group(2) != null ? Long.parseLong(range.group(2)) : nextOffset;
+                segments.add(new SegmentIndex.Segment(duration, offset, length));
+                nextOffset = offset + length;
+            }
+        }
+        if (file == null || segments.isEmpty()) {
+            throw new IOException(playlist.getFileName() + " lists no segments");
+        }
+
+        InitInfo info = readInit(outputDir.resolve(file), init);
+        return new SegmentIndex.Track(name, info.type, file, info.codecs, info.width, info.height, info.channels,
+                info.sampleRate, peakBandwidth(segments), averageBandwidth(segments), init, List.copyOf(segments));
+    }
+
+    private static long peakBandwidth(List<SegmentIndex.Segment> segments) {
+        boolean anyLong = segments.stream().anyMatch(segment -> segment.duration() >= MIN_PEAK_SEGMENT_SECONDS);
+        return (long) Math.ceil(segments.stream()
+                .filter(segment -> !anyLong || segment.duration() >= MIN_PEAK_SEGMENT_SECONDS)
+                .filter(segment -> segment.duration() > 0)
+                .mapToDouble(segment -> segment.length() * 8 / segment.duration())
+                .max()
+                .orElse(0));
+    }
+
+    private static long averageBandwidth(List<SegmentIndex.Segment> segments) {
+        double seconds = segments.stream().mapToDouble(SegmentIndex.Segment::duration).sum();
+        long bytes = segments.stream().mapToLong(SegmentIndex.Segment::length).sum();
+        return seconds > 0 ? (long) Math.ceil(bytes * 8 / seconds) : 0;
+    }
+
+    /**
+     * Walks moov/trak/mdia/minf/stbl/stsd of the init segment to the first sample entry.
+     */
+    private static InitInfo readInit(Path file, SegmentIndex.ByteRange init) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) init.length());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, init.offset() + buffer.position()) < 0) {
+                    throw new IOException(file.getFileName() + " is shorter than its init segment");
+                }
+            }
+        }
+        buffer.flip();
+        InitInfo info = new InitInfo();
+        walk(buffer, info);
+        if (info.type == null) {
+            throw new IOException("No supported sample entry in " + file.getFileName());
+        }
+        return info;
+    }
+
+    private static void walk(ByteBuffer boxes, InitInfo info) {
+        while (boxes.remaining() >= 8 && info.type == null) {
+            int start = boxes.position();
+            long size = Integer.toUnsignedLong(boxes.getInt());
+            String type = fourCc(boxes);
+            if (size == 1) {
+                size = boxes.getLong();
+            } else if (size == 0) {
+                size = boxes.limit() - start;
+            }
+            int end = (int) Math.min(boxes.limit(), start + size);
+            ByteBuffer body = boxes.duplicate().position(boxes.position()).limit(end);
+
+            if (CONTAINERS.contains(type)) {
+                walk(body.slice(), info);
+            } else if (type.equals("stsd")) {
+                // full box header and entry count
+                body.position(body.position() + 8);
+                walk(body.slice(), info);
+            } else if (type.equals("avc1") || type.equals("avc3")) {
+                videoEntry(body.slice(), type, info);
+            } else if (type.equals("mp4a")) {
+                audioEntry(body.slice(), info);
+            }
+            boxes.position(end);
+        }
+    }
+
+    private static void videoEntry(ByteBuffer entry, String type, InitInfo info) {
+        info.type = SegmentIndex.Type.VIDEO;
+        info.width = Short.toUnsignedInt(entry.getShort(24));
+        info.height = Short.toUnsignedInt(entry.getShort(26));
+        info.codecs = type;
+        // child boxes follow the 78-byte visual sample entry
+        entry.position(78);
+        while (entry.remaining() >= 8) {
+            int start = entry.position();
+            int size = entry.getInt();
+            String child = fourCc(entry);
+            if (child.equals("avcC") && entry.remaining() >= 4) {
+                entry.get();
+                info.codecs = String.format(Locale.ROOT, "%s.%02x%02x%02x", type,
+                        entry.get() & 0xff, entry.get() & 0xff, entry.get() & 0xff);
+                return;
+            }
+            if (size < 8) {
+                return;
+            }
+            entry.position(start + size);
+        }
+    }
+
+    private static void audioEntry(ByteBuffer entry, InitInfo info) {
+        info.type = SegmentIndex.Type.AUDIO;
+        info.channels = Short.toUnsignedInt(entry.getShort(16));
+        info.sampleRate = Short.toUnsignedInt(entry.getShort(24));
+        info.codecs = "mp4a.40.2";
+        // esds follows the 28-byte audio sample entry
+        entry.position(28);
+        while (entry.remaining() >= 8) {
+            int start = entry.position();
+            int size = entry.getInt();
+            String child = fourCc(entry);
+            if (child.equals("esds")) {
+                Integer objectType = audioObjectType(entry.duplicate().position(entry.position() + 4)
+                        .limit(Math.min(entry.limit(), start + size)).slice());
+                if (objectType != null) {
+                    info.codecs = "mp4a.40." + objectType;
+                }
+                return;
+            }
+            if (size < 8) {
+                return;
+            }
+            entry.position(start + size);
+        }
+    }
+
+    /**
+     * Audio object type from the ES descriptor: ES_Descriptor (3) holds the
+     * DecoderConfigDescriptor (4), whose DecoderSpecificInfo (5) starts with it.
+     */
+    private static Integer audioObjectType(ByteBuffer descriptors) {
+        while (descriptors.remaining() >= 2) {
+            int tag = descriptors.get() & 0xff;
+            int length = 0;
+            for (int i = 0; i < 4 && descriptors.hasRemaining(); i++) {
+                int b = descriptors.get() & 0xff;
+                length = (length << 7) | (b & 0x7f);
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            int end = Math.min(descriptors.limit(), descriptors.position() + length);
+            switch (tag) {
+                case 3 -> {
+                    // ES_ID, then flags that announce optional fields
+                    descriptors.getShort();
+                    int flags = descriptors.get() & 0xff;
+                    if ((flags & 0x80) != 0) {
+                        descriptors.getShort();
+                    }
+                    if ((flags & 0x40) != 0) {
+                        descriptors.position(descriptors.position() + (descriptors.get() & 0xff));
+                    }
+                    if ((flags & 0x20) != 0) {
+                        descriptors.getShort();
+                    }
+                }
+                // object type, stream type, buffer size, max and average bitrate
+                case 4 -> descriptors.position(descriptors.position() + 13);
+                case 5 -> {
+                    return descriptors.hasRemaining() ? (descriptors.get() & 0xff) >> 3 : null;
+                }
+                default -> descriptors.position(end);
+            }
+        }
+        return null;
+    }
+
+    private static String fourCc(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private static final class InitInfo {
+        private SegmentIndex.Type type;
+        private String codecs;
+        private Integer width;
+        private Integer height;
+        private Integer channels;
+        private Integer sampleRate;
+    }
+}
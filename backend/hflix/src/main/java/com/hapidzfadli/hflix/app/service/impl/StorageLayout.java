@@ -0,0 +1,32 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.config.MinioProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds storage keys following the minio.videos.* layout:
+ * {@code {original|encoded|thumbnail path}/{videoId}/{fileName}}.
+ */
+@Component
+@RequiredArgsConstructor
+public class StorageLayout {
+
+    private final MinioProperties minioProperties;
+
+    public String original(Long videoId, String fileName) {
+        return key(minioProperties.getVideos().getOriginalPath(), videoId, fileName);
+    }
+
+    public String encoded(Long videoId, String fileName) {
+        return key(minioProperties.getVideos().getEncodedPath(), videoId, fileName);
+    }
+
+    public String thumbnail(Long videoId, String fileName) {
+        return key(minioProperties.getVideos().getThumbnailPath(), videoId, fileName);
+    }
+
+    private static String key(String prefix, Long videoId, String fileName) {
+        return prefix + "/" + videoId + "/" + fileName;
+    }
+}
@@ -0,0 +1,234 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.config.ThumbnailProperties;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import lombok.extern.slf4j.Slf4j;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Generates a video's poster, scrubbing previews and trickplay sprite sheets once it is
+ * encoded, in one ffmpeg pass over the lowest rendition: the poster is taken at
+ * {@code poster-position} of the duration, a preview every {@code interval}, and the
+ * previews are tiled into sheets of {@code columns} x {@code rows}. {@value #TRICKPLAY_INDEX}
+ * maps each interval of the timeline to its cell of a sheet, so a player scrubbing the
+ * timeline fetches one sheet per {@code columns * rows} previews.
+ * <p>
+ * Jobs run one at a time on a minimum-priority thread, and their ffmpeg only takes a
+ * process slot no encode is waiting for. Every run writes a new version directory, so its
+ * files are never overwritten and are stored as immutable.
+ */
+@Slf4j
+@Service
+public class ThumbnailGenerator implements DisposableBean {
+
+    public static final String POSTER = "poster.jpg";
+    public static final String TRICKPLAY_INDEX = "trickplay.vtt";
+
+    private static final String FRAME_PREFIX = "frame_";
+    private static final String SPRITE_PREFIX = "sprite_";
+
+    private final ThumbnailProperties properties;
+    private final FfmpegRunner runner;
+    private final StorageService storageService;
+    private final StorageLayout storageLayout;
+    private final ManifestService manifestService;
+    private final VideoRepository videoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path workDir;
+    private final ExecutorService executor;
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public ThumbnailGenerator(ThumbnailProperties properties, FfmpegRunner runner, StorageService storageService,
+                              StorageLayout storageLayout, ManifestService manifestService,
+                              VideoRepository videoRepository, TransactionTemplate transactionTemplate,
+                              EncodingProperties encodingProperties) {
+        this.properties = properties;
+        this.runner = runner;
+        this.storageService = storageService;
+        this.storageLayout = storageLayout;
+        this.manifestService = manifestService;
+        this.videoRepository = videoRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.workDir = Paths.get(encodingProperties.getWorkDir()).toAbsolutePath().normalize().resolve("thumbnails");
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("thumbnails-");
+        threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Queues thumbnail generation for an encoded video, unless it is queued already.
+     */
+    public void submit(Long videoId) {
+        if (!properties.isEnabled() || !queued.add(videoId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(videoId);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Generating thumbnails for video {} failed: {}", videoId, e.getMessage());
+                } finally {
+                    queued.remove(videoId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(videoId);
+        }
+    }
+
+    // videos encoded while the node was down or before thumbnails existed
+    @EventListener(ApplicationReadyEvent.class)
+    public void queueMissing() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        List<Video> missing = videoRepository.findByStatusAndThumbnailVersionIsNullAndSourceVideoIdIsNullOrderByIdAsc(
+                Video.Status.READY);
+        missing.forEach(video -> submit(video.getId()));
+        if (!missing.isEmpty()) {
+            log.info("Queued thumbnail generation for {} videos", missing.size());
+        }
+    }
+
+    private void generate(Long videoId) throws IOException {
+        SegmentIndex.Track lowest = manifestService.segmentIndex(videoId)
+                .flatMap(index -> index.tracks().stream()
+                        .filter(track -> track.type() == SegmentIndex.Type.VIDEO)
+                        .findFirst())
+                .orElse(null);
+        if (lowest == null || lowest.width() == null || lowest.height() == null) {
+            log.debug("Video {} has no indexed rendition, skipping thumbnails", videoId);
+            return;
+        }
+        String input = storageService.readUrl(storageLayout.encoded(videoId, lowest.file()));
+        double duration = lowest.duration();
+        int width = Math.min(properties.getWidth(), lowest.width()) & ~1;
+        int height = Math.max(2, (int) Math.round(width * (double) lowest.height() / lowest.width() / 2) * 2);
+
+        Path jobDir = workDir.resolve(videoId.toString());
+        FileSystemUtils.deleteRecursively(jobDir);
+        Path outputDir = Files.createDirectories(jobDir.resolve("out"));
+        try {
+            runner.runBackground(command(input, duration, width, height, outputDir), jobDir.resolve("ffmpeg.log"),
+                    properties.getNiceness());
+
+            List<Path> frames = list(outputDir, FRAME_PREFIX);
+            List<Path> sprites = list(outputDir, SPRITE_PREFIX);
+            if (frames.isEmpty() || sprites.isEmpty() || !Files.exists(outputDir.resolve(POSTER))) {
+                throw new IOException("ffmpeg wrote no thumbnails");
+            }
+            Files.writeString(outputDir.resolve(TRICKPLAY_INDEX), trickplayIndex(frames.size(), sprites, duration,
+                    width, height), StandardCharsets.UTF_8);
+
+            String version = Long.toString(System.currentTimeMillis(), 36);
+            try (Stream<Path> files = Files.list(outputDir)) {
+                // the index last, it never points at a sheet that is not stored yet
+                for (Path file : files.sorted(Comparator.comparing((Path path) -> path.endsWith(TRICKPLAY_INDEX)))
+                        .toList()) {
+                    String fileName = file.getFileName().toString();
+                    storageService.putImmutable(storageLayout.thumbnail(videoId, version + "/" + fileName), file,
+                            fileName.endsWith(".vtt") ? "text/vtt" : "image/jpeg");
+                }
+            }
+            transactionTemplate.executeWithoutResult(tx ->
+                    videoRepository.updateThumbnailVersionWithDuplicates(videoId, version));
+            log.info("Generated thumbnails {} for video {}: {} previews on {} sprite sheets", version, videoId,
+                    frames.size(), sprites.size());
+        } finally {
+            FileSystemUtils.deleteRecursively(jobDir);
+        }
+    }
+
+    private FFmpegBuilder command(String input, double duration, int width, int height, Path outputDir) {
+        long intervalMs = properties.getInterval().toMillis();
+        String filter = String.format(Locale.ROOT,
+                "[0:v]split=2[p][t];[p]trim=start=%.3f,setpts=PTS-STARTPTS[poster];"
+                        + "[t]fps=1000/%d,scale=%d:%d,split=2[frames][s];[s]tile=%dx%d[sprites]",
+                duration * properties.getPosterPosition(), intervalMs, width, height,
+                properties.getColumns(), properties.getRows());
+        String quality = String.valueOf(properties.getQuality());
+        return runner.builder()
+                .setInput(input)
+                .setComplexFilter(filter)
+                .addOutput(outputDir.resolve(POSTER).toString())
+                .setFormat("image2")
+                .addExtraArgs("-map", "[poster]", "-frames:v", "1", "-q:v", quality)
+                .done()
+                .addOutput(outputDir.resolve(FRAME_PREFIX + "%05d.jpg").toString())
+                .setFormat("image2")
+                .addExtraArgs("-map", "[frames]", "-q:v", quality)
+                .done()
+                .addOutput(outputDir.resolve(SPRITE_PREFIX + "%03d.jpg").toString())
+                .setFormat("image2")
+                .addExtraArgs("-map", "[sprites]", "-q:v", quality)
+                .done();
+    }
+
+    /**
+     * One cue per preview, pointing at its cell with a media fragment
+     * ({@code sprite_001.jpg#xywh=x,y,w,h}).
+     */
+    private String trickplayIndex(int frames, List<Path> sprites, double duration, int width, int height) {
+        int perSheet = properties.getColumns() * properties.getRows();
+        double interval = properties.getInterval().toMillis() / 1000.0;
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        for (int i = 0; i < frames && i / perSheet < sprites.size(); i++) {
+            double start = i * interval;
+            if (start >= duration) {
+                break;
+            }
+            int cell = i % perSheet;
+            vtt.append('\n').append(timestamp(start)).append(" --> ")
+                    .append(timestamp(Math.min(start + interval, duration))).append('\n')
+                    .append(sprites.get(i / perSheet).getFileName())
+                    .append("#xywh=").append(cell % properties.getColumns() * width)
+                    .append(',').append(cell / properties.getColumns() * height)
+                    .append(',').append(width).append(',').append(height).append('\n');
+        }
+        return vtt.toString();
+    }
+
+    private static List<Path> list(Path dir, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    private static String timestamp(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
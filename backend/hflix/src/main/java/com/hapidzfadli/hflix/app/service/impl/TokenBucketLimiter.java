@@ -0,0 +1,61 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket per key. Each bucket is a single theoretical arrival time (the generic
+ * cell rate algorithm) advanced by compare-and-set, so taking a token never locks, and
+ * the buckets live in a Caffeine cache, whose map and buffers are striped. A key idle
+ * for as long as its bucket takes to refill is dropped, it would start full anyway, and
+ * the number of keys is capped, so memory stays bounded however many keys arrive.
+ */
+public class TokenBucketLimiter {
+
+    private final long intervalNanos;
+    // how far ahead of now the arrival time may run, the burst beyond the first token
+    private final long toleranceNanos;
+    private final LongSupplier clock;
+    private final long origin;
+    private final Cache<String, AtomicLong> buckets;
+
+    public TokenBucketLimiter(int capacity, Duration interval, long maxKeys) {
+        this(capacity, interval, maxKeys, System::nanoTime);
+    }
+
+    // the clock is swapped in tests
+    TokenBucketLimiter(int capacity, Duration interval, long maxKeys, LongSupplier clock) {
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        this.intervalNanos = interval.toNanos();
+        this.toleranceNanos = (Math.max(1, capacity) - 1) * intervalNanos;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(interval.multipliedBy(Math.max(1, capacity)))
+                .build();
+    }
+
+    /**
+     * Takes a token for the key. Returns 0 when one was available, otherwise the
+     * nanoseconds until the next one is.
+     */
+    public long tryAcquire(String key) {
+        AtomicLong arrival = buckets.get(key, k -> new AtomicLong());
+        long now = clock.getAsLong() - origin;
+        while (true) {
+            long current = arrival.get();
+            long start = Math.max(current, now);
+            long wait = start - toleranceNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+/**
+ * Principal of a bearer token, carrying the user id from its claims so requests can be
+ * attributed to the user without loading the row.
+ */
+public record TokenPrincipal(Long userId, String username) implements AuthenticatedPrincipal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
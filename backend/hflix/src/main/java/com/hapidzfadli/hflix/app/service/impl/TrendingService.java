@@ -0,0 +1,137 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.TrendingVideo;
+import com.hapidzfadli.hflix.config.TrendingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Most viewed videos over a sliding window. Views only increment a {@link LongAdder} per
+ * video; every refresh drains them into a count-min sketch per time bucket and into a
+ * sketch of the whole window, from which the expiring bucket is subtracted as the window
+ * slides. The videos viewed since the last refresh and the previous leaders are then
+ * ranked with a bounded heap, and the list is published for {@link #trending()} to
+ * return as is.
+ * <p>
+ * Only the sketches have a fixed size. The per-video adders are kept once created, since
+ * removing an idle one could lose a view racing with the removal, so memory also grows by
+ * one adder for every video viewed since startup, bounded by the catalogue rather than by
+ * traffic. Counts are estimates, never below the real count.
+ */
+@Slf4j
+@Component
+public class TrendingService {
+
+    private static final Comparator<TrendingVideo> BY_VIEWS = Comparator.comparingLong(TrendingVideo::views);
+
+    private final Map<Long, LongAdder> recent = new ConcurrentHashMap<>();
+    private final CountMinSketch[] buckets;
+    private final CountMinSketch window;
+    private final long bucketNanos;
+    private final int size;
+    private final LongSupplier clock;
+    // the sketches and leaders belong to refresh()
+    private int current;
+    private long bucketStarted;
+    private List<TrendingVideo> leaders = List.of();
+    private volatile List<TrendingVideo> trending = List.of();
+
+    public TrendingService(TrendingProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    // the clock is swapped in tests
+    TrendingService(TrendingProperties properties, LongSupplier clock) {
+        int bucketCount = Math.max(2, properties.getBuckets());
+        this.buckets = new CountMinSketch[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new CountMinSketch(properties.getSketchDepth(), properties.getSketchWidth());
+        }
+        this.window = new CountMinSketch(properties.getSketchDepth(), properties.getSketchWidth());
+        this.bucketNanos = Math.max(1, properties.getWindow().toNanos() / bucketCount);
+        this.size = Math.max(1, properties.getSize());
+        this.clock = clock;
+        this.bucketStarted = clock.getAsLong();
+    }
+
+    public void record(Long videoId) {
+        LongAdder views = recent.get(videoId);
+        if (views == null) {
+            views = recent.computeIfAbsent(videoId, id -> new LongAdder());
+        }
+        views.increment();
+    }
+
+    /**
+     * Trending videos, most viewed first, as of the last refresh.
+     */
+    public List<TrendingVideo> trending() {
+        return trending;
+    }
+
+    @Scheduled(fixedDelayString = "${app.trending.refresh-interval-ms:1000}")
+    public synchronized void refresh() {
+        slide(clock.getAsLong());
+
+        // previous leaders are re-ranked too, their counts fall as the window slides
+        Set<Long> candidates = new HashSet<>();
+        leaders.forEach(video -> candidates.add(video.videoId()));
+        recent.forEach((videoId, adder) -> {
+            long views = adder.sumThenReset();
+            if (views == 0) {
+                return;
+            }
+            buckets[current].add(videoId, views);
+            window.add(videoId, views);
+            candidates.add(videoId);
+        });
+
+        // twice the list size is kept, so a video just below the list can move back up
+        int kept = size * 2;
+        PriorityQueue<TrendingVideo> top = new PriorityQueue<>(kept + 1, BY_VIEWS);
+        for (Long videoId : candidates) {
+            long views = window.estimate(videoId);
+            if (views <= 0) {
+                continue;
+            }
+            if (top.size() < kept) {
+                top.add(new TrendingVideo(videoId, views));
+            } else if (views > top.peek().views()) {
+                top.poll();
+                top.add(new TrendingVideo(videoId, views));
+            }
+        }
+
+        List<TrendingVideo> ranked = new ArrayList<>(top);
+        ranked.sort(BY_VIEWS.reversed());
+        leaders = ranked;
+        trending = List.copyOf(ranked.subList(0, Math.min(size, ranked.size())));
+    }
+
+    // retires one bucket per elapsed bucket interval, all of them after a whole window
+    private void slide(long now) {
+        long elapsed = (now - bucketStarted) / bucketNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        for (long i = 0; i < Math.min(elapsed, buckets.length); i++) {
+            current = (current + 1) % buckets.length;
+            window.subtract(buckets[current]);
+            buckets[current].clear();
+        }
+        bucketStarted += elapsed * bucketNanos;
+        log.debug("Trending window slid by {} buckets", elapsed);
+    }
+}
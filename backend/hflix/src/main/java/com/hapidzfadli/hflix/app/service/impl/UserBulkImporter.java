@@ -0,0 +1,231 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.BulkImportResult;
+import com.hapidzfadli.hflix.config.PooledPasswordEncoder;
+import com.hapidzfadli.hflix.config.UserImportProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+import com.hapidzfadli.hflix.domain.repository.UserRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users in chunks. Each chunk runs one set-based duplicate check, hashes
+ * passwords in parallel and inserts the rows with a single JDBC batch. Hashing runs on
+ * the import's own pool with the bare encoder, not through the login hashing pool, so an
+ * import neither fills its queue nor has rows rejected as busy. Hibernate cannot
+ * batch inserts for IDENTITY ids, so the insert bypasses the entity manager. If a batch
+ * fails, the chunk is retried row by row so every error is reported against its row.
+ */
+@Slf4j
+@Component
+public class UserBulkImporter implements DisposableBean {
+
+    private static final String INSERT_SQL = "INSERT INTO users " +
+            "(username, email, password, full_name, role, status, profile_picture, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final int chunkSize;
+    private final ExecutorService hashExecutor;
+
+    public UserBulkImporter(UserRepository userRepository, PasswordEncoder passwordEncoder, JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate, Validator validator, UserImportProperties properties) {
+        int threads = properties.getHashThreads() > 0
+                ? properties.getHashThreads()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder instanceof PooledPasswordEncoder pooled
+                ? pooled.delegate()
+                : passwordEncoder;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.chunkSize = properties.getChunkSize();
+        this.hashExecutor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("user-import-"));
+    }
+
+    public BulkImportResult importUsers(List<User> users) {
+        BulkImportResult result = new BulkImportResult();
+        result.setTotal(users.size());
+
+        // usernames and emails already taken by earlier rows of the same request
+        Set<String> seenUsernames = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+
+        for (int start = 0; start < users.size(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, users.size());
+            importChunk(users, start, end, seenUsernames, seenEmails, result);
+        }
+
+        result.getErrors().sort(Comparator.comparingInt(BulkImportResult.RowError::getIndex));
+        log.info("Bulk import finished: {} created, {} failed of {}", result.getCreated(), result.getFailed(), result.getTotal());
+        return result;
+    }
+
+    private void importChunk(List<User> users, int start, int end, Set<String> seenUsernames, Set<String> seenEmails,
+                             BulkImportResult result) {
+        List<Integer> candidates = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            String error = validate(users.get(i));
+            if (error != null) {
+                result.addError(i, users.get(i) != null ? users.get(i).getUsername() : null, error);
+            } else {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Existing existing = findExisting(users, candidates);
+        List<Integer> accepted = new ArrayList<>(candidates.size());
+        for (int i : candidates) {
+            User user = users.get(i);
+            if (existing.usernames().contains(user.getUsername()) || !seenUsernames.add(user.getUsername())) {
+                result.addError(i, user.getUsername(), "Username already exist");
+            } else if (existing.emails().contains(user.getEmail()) || !seenEmails.add(user.getEmail())) {
+                result.addError(i, user.getUsername(), "Email already exist");
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        List<Integer> hashed = hashPasswords(users, accepted, result);
+        if (!hashed.isEmpty()) {
+            insert(users, hashed, result);
+        }
+    }
+
+    private String validate(User user) {
+        if (user == null) {
+            return "Row is empty";
+        }
+
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    // one query per chunk for both unique columns
+    private Existing findExisting(List<User> users, List<Integer> rows) {
+        Set<String> usernames = new HashSet<>(rows.size());
+        Set<String> emails = new HashSet<>(rows.size());
+        rows.forEach(i -> {
+            usernames.add(users.get(i).getUsername());
+            emails.add(users.get(i).getEmail());
+        });
+
+        // kept apart: one user's username may be another row's email
+        Existing existing = new Existing(new HashSet<>(), new HashSet<>());
+        for (Object[] row : userRepository.findExistingUsernamesAndEmails(usernames, emails)) {
+            existing.usernames().add((String) row[0]);
+            existing.emails().add((String) row[1]);
+        }
+        return existing;
+    }
+
+    private record Existing(Set<String> usernames, Set<String> emails) {
+    }
+
+    private List<Integer> hashPasswords(List<User> users, List<Integer> rows, BulkImportResult result) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(rows.size());
+        for (int i : rows) {
+            String rawPassword = users.get(i).getPassword();
+            futures.add(CompletableFuture.supplyAsync(() -> passwordEncoder.encode(rawPassword), hashExecutor));
+        }
+
+        List<Integer> hashed = new ArrayList<>(rows.size());
+        for (int n = 0; n < rows.size(); n++) {
+            int i = rows.get(n);
+            try {
+                users.get(i).setPassword(futures.get(n).join());
+                hashed.add(i);
+            } catch (CompletionException e) {
+                result.addError(i, users.get(i).getUsername(), "Password hashing failed: " + e.getCause().getMessage());
+            }
+        }
+        return hashed;
+    }
+
+    private void insert(List<User> users, List<Integer> rows, BulkImportResult result) {
+        LocalDateTime now = LocalDateTime.now();
+        rows.forEach(i -> prepare(users.get(i), now));
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, i) -> bind(ps, users.get(i))));
+            result.setCreated(result.getCreated() + rows.size());
+        } catch (DataAccessException e) {
+            log.warn("Batch insert of {} users failed, retrying row by row: {}", rows.size(), e.getMessage());
+            for (int i : rows) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, users.get(i)));
+                    result.setCreated(result.getCreated() + 1);
+                } catch (DataAccessException rowError) {
+                    result.addError(i, users.get(i).getUsername(), rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private static void prepare(User user, LocalDateTime now) {
+        if (user.getRole() == null) {
+            user.setRole(User.Role.USER);
+        }
+        if (user.getStatus() == null) {
+            user.setStatus(User.Status.ACTIVE);
+        }
+        user.setCreatedAt(now);
+        user.setUpdatedAt(now);
+    }
+
+    private static void bind(PreparedStatement ps, User user) throws SQLException {
+        ps.setString(1, user.getUsername());
+        ps.setString(2, user.getEmail());
+        ps.setString(3, user.getPassword());
+        ps.setString(4, user.getFullName());
+        ps.setString(5, user.getRole().name());
+        ps.setString(6, user.getStatus().name());
+        ps.setString(7, user.getProfilePicture());
+        ps.setTimestamp(8, Timestamp.valueOf(user.getCreatedAt()));
+        ps.setTimestamp(9, Timestamp.valueOf(user.getUpdatedAt()));
+    }
+
+    @Override
+    public void destroy() {
+        hashExecutor.shutdown();
+    }
+}
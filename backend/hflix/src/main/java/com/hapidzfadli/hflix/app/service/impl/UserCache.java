@@ -0,0 +1,162 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hapidzfadli.hflix.config.UserCacheProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded near cache for user lookups by id and username. Entries expire after the
+ * configured TTL and the least valuable ones are evicted once the size bound is hit.
+ * <p>
+ * The cache holds detached copies and hands out fresh copies, so callers can never
+ * mutate a shared instance. Every mutation evicts the affected user immediately and
+ * again after commit. Loads that started before an eviction are not stored, so a
+ * suspended or changed user is never served from an entry older than the change.
+ */
+@Component
+public class UserCache {
+
+    private final boolean enabled;
+    private final Cache<Long, User> usersById;
+    private final Cache<String, Long> idsByUsername;
+
+    // bumped on every eviction, a load only fills the cache if no eviction happened meanwhile
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserCache(UserCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        this.idsByUsername = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "users");
+    }
+
+    public Optional<User> findById(Long id, Supplier<Optional<User>> loader) {
+        if (!enabled || id == null) {
+            return loader.get();
+        }
+
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copy(cached));
+        }
+        return load(loader);
+    }
+
+    public Optional<User> findByUsername(String username, Supplier<Optional<User>> loader) {
+        if (!enabled || username == null) {
+            return loader.get();
+        }
+
+        Long id = idsByUsername.getIfPresent(username);
+        if (id != null) {
+            User cached = usersById.getIfPresent(id);
+            if (cached != null && username.equals(cached.getUsername())) {
+                return Optional.of(copy(cached));
+            }
+        }
+        return load(loader);
+    }
+
+    public void updateLastLogin(Long id, LocalDateTime lastLogin) {
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            cached.setLastLogin(lastLogin);
+        }
+    }
+
+    public void evict(Long id) {
+        if (id == null) {
+            return;
+        }
+
+        invalidations.incrementAndGet();
+        User removed = usersById.asMap().remove(id);
+        if (removed != null) {
+            idsByUsername.asMap().remove(removed.getUsername(), id);
+        }
+    }
+
+    public void evictUsername(String username) {
+        if (username == null) {
+            return;
+        }
+
+        invalidations.incrementAndGet();
+        Long id = idsByUsername.asMap().remove(username);
+        if (id != null) {
+            usersById.invalidate(id);
+        }
+    }
+
+    /**
+     * Evicts now and once more after the surrounding transaction completes, so readers
+     * that loaded the old row before commit cannot leave it behind in the cache.
+     */
+    public void evictAfterCommit(Long id, String username) {
+        evict(id);
+        evictUsername(username);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id);
+                    evictUsername(username);
+                }
+            });
+        }
+    }
+
+    private Optional<User> load(Supplier<Optional<User>> loader) {
+        long generation = invalidations.get();
+        Optional<User> loaded = loader.get();
+
+        loaded.ifPresent(user -> {
+            if (user.getId() != null && invalidations.get() == generation) {
+                usersById.put(user.getId(), copy(user));
+                idsByUsername.put(user.getUsername(), user.getId());
+
+                // an eviction raced with the put, drop what we just stored
+                if (invalidations.get() != generation) {
+                    usersById.invalidate(user.getId());
+                }
+            }
+        });
+        return loaded;
+    }
+
+    private static User copy(User source) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setUsername(source.getUsername());
+        user.setEmail(source.getEmail());
+        user.setPassword(source.getPassword());
+        user.setFullName(source.getFullName());
+        user.setRole(source.getRole());
+        user.setStatus(source.getStatus());
+        user.setProfilePicture(source.getProfilePicture());
+        user.setCreatedAt(source.getCreatedAt());
+        user.setUpdatedAt(source.getUpdatedAt());
+        user.setLastLogin(source.getLastLogin());
+        return user;
+    }
+}
@@ -0,0 +1,155 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.api.dto.UserDTO;
+import com.hapidzfadli.hflix.config.ExportProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams every user straight from a forward-only JDBC cursor to the output. Rows are
+ * mapped and written one at a time and detached right away, so heap use does not grow
+ * with the table. Writes block while the client is slow to read, which in turn stops the
+ * cursor from fetching further rows.
+ */
+@Slf4j
+@Service
+public class UserExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format from(String value) {
+            return Format.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private static final String CSV_HEADER =
+            "id,username,email,fullName,role,status,profilePicture,createdAt,updatedAt,lastLogin\n";
+
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final int bufferSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserExportService(ObjectMapper objectMapper, ExportProperties properties) {
+        this.objectMapper = objectMapper;
+        this.fetchSize = properties.getFetchSize();
+        this.bufferSize = properties.getBufferSize();
+    }
+
+    @Transactional(readOnly = true)
+    public long export(Format format, OutputStream out) throws IOException {
+        try (Stream<User> users = entityManager.createQuery("SELECT u FROM User u ORDER BY u.id", User.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_CACHEABLE, false)
+                .getResultStream()) {
+
+            long count = format == Format.CSV
+                    ? writeCsv(users.iterator(), out)
+                    : writeNdjson(users.iterator(), out);
+
+            log.info("Exported {} users as {}", count, format);
+            return count;
+        }
+    }
+
+    private long writeNdjson(Iterator<User> users, OutputStream out) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            while (users.hasNext()) {
+                generator.writeObject(toDTO(users.next()));
+                generator.writeRaw('\n');
+                count++;
+            }
+            generator.flush();
+        }
+        return count;
+    }
+
+    private long writeCsv(Iterator<User> users, OutputStream out) throws IOException {
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+        writer.write(CSV_HEADER);
+
+        while (users.hasNext()) {
+            UserDTO user = toDTO(users.next());
+            writer.write(String.valueOf(user.getId()));
+            writeCsvField(writer, user.getUsername());
+            writeCsvField(writer, user.getEmail());
+            writeCsvField(writer, user.getFullName());
+            writeCsvField(writer, user.getRole());
+            writeCsvField(writer, user.getStatus());
+            writeCsvField(writer, user.getProfilePicture());
+            writeCsvField(writer, user.getCreatedAt());
+            writeCsvField(writer, user.getUpdatedAt());
+            writeCsvField(writer, user.getLastLogin());
+            writer.write('\n');
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private UserDTO toDTO(User user) {
+        UserDTO dto = UserDTO.fromUser(user);
+        // keep the persistence context empty while the cursor moves on
+        entityManager.detach(user);
+        return dto;
+    }
+
+    private static void writeCsvField(Writer writer, Object value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -1,12 +1,20 @@
 package com.hapidzfadli.hflix.app.service.impl;
 
+import com.hapidzfadli.hflix.api.exception.DuplicateUserException;
+import com.hapidzfadli.hflix.api.exception.UserNotFoundException;
+import com.hapidzfadli.hflix.app.service.BulkImportResult;
 import com.hapidzfadli.hflix.app.service.UserService;
 import com.hapidzfadli.hflix.domain.entity.User;
 import com.hapidzfadli.hflix.domain.repository.UserRepository;
-import jakarta.persistence.EntityNotFoundException;
+import com.hapidzfadli.hflix.domain.repository.UserSpecifications;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,15 +23,23 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+@Slf4j
 @Service
 public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final LastLoginBuffer lastLoginBuffer;
+    private final UserCache userCache;
+    private final UserBulkImporter userBulkImporter;
 
     @Autowired
-    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                           LastLoginBuffer lastLoginBuffer, UserCache userCache, UserBulkImporter userBulkImporter) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.lastLoginBuffer = lastLoginBuffer;
+        this.userCache = userCache;
+        this.userBulkImporter = userBulkImporter;
     }
 
     @Override
@@ -36,14 +52,45 @@ public class UserServiceImpl implements UserService {
         return userRepository.findAll(pageable);
     }
 
+    @Override
+    public Page<User> findAllUsers(String keyword, User.Status status, Pageable pageable) {
+        return userRepository.findAll(UserSpecifications.search(keyword, status), pageable);
+    }
+
+    @Override
+    public Window<User> scrollUsers(String keyword, User.Status status, Sort sort, ScrollPosition position, int size) {
+        return userRepository.findBy(UserSpecifications.search(keyword, status), query -> query
+                .sortBy(sort)
+                .limit(size)
+                .scroll(position));
+    }
+
+    @Override
+    public long countUsers(String keyword, User.Status status) {
+        return userRepository.count(UserSpecifications.search(keyword, status));
+    }
+
+    @Override
+    public long estimateUserCount() {
+        try {
+            Long estimate = userRepository.estimateRowCount();
+            if (estimate != null) {
+                return estimate;
+            }
+        } catch (DataAccessException e) {
+            log.debug("Row estimate unavailable, falling back to COUNT(*): {}", e.getMessage());
+        }
+        return userRepository.count();
+    }
+
     @Override
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        return userCache.findById(id, () -> userRepository.findById(id));
     }
 
     @Override
     public Optional<User> findByUsername(String username){
-        return userRepository.findByUsername(username);
+        return userCache.findByUsername(username, () -> userRepository.findByUsername(username));
     }
 
     @Override
@@ -55,33 +102,36 @@ public class UserServiceImpl implements UserService {
     @Transactional
     public User createUser(User user) {
         if(userRepository.existsByUsername(user.getUsername())){
-            throw new IllegalArgumentException("Username already exist");
+            throw new DuplicateUserException("Username already exist");
         }
 
         if(userRepository.existsByEmail(user.getEmail())){
-            throw new IllegalArgumentException("Email already exist");
+            throw new DuplicateUserException("Email already exist");
         }
 
         user.setPassword(passwordEncoder.encode(user.getPassword()));
 
-        return userRepository.save(user);
+        User createdUser = userRepository.save(user);
+        userCache.evictAfterCommit(createdUser.getId(), createdUser.getUsername());
+        return createdUser;
     }
 
     @Override
     @Transactional
     public User updateUser(Long id, User user){
         User existingUser = userRepository.findById(id)
-                .orElseThrow(()-> new EntityNotFoundException("User not found"));
+                .orElseThrow(() -> UserNotFoundException.withId(id));
+        userCache.evictAfterCommit(id, existingUser.getUsername());
 
         if(user.getUsername() != null && !user.getUsername().equals(existingUser.getUsername())){
             if(userRepository.existsByUsername(user.getUsername())){
-                throw new IllegalArgumentException("Username already exist");
+                throw new DuplicateUserException("Username already exist");
             }
         }
 
         if(user.getEmail() != null && !user.getEmail().equals(existingUser.getEmail())){
             if(userRepository.existsByEmail(user.getEmail())){
-                throw new IllegalArgumentException("Email already exist");
+                throw new DuplicateUserException("Email already exist");
             }
         }
 
@@ -112,27 +162,56 @@ public class UserServiceImpl implements UserService {
     @Transactional
     public void deleteUser(Long id) {
         if (!userRepository.existsById(id)) {
-            throw new EntityNotFoundException("User not found with ID: " + id);
+            throw UserNotFoundException.withId(id);
         }
         userRepository.deleteById(id);
+        userCache.evictAfterCommit(id, null);
     }
 
 
-    @Transactional
-    public void updateLastLogin(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new EntityNotFoundException("User not found with username: " + username));
+    @Override
+    public void updateLastLogin(User user) {
+        LocalDateTime now = LocalDateTime.now();
+        user.setLastLogin(now);
+        lastLoginBuffer.record(user.getId(), now);
+        userCache.updateLastLogin(user.getId(), now);
+    }
 
-        user.setLastLogin(LocalDateTime.now());
-        userRepository.save(user);
+    @Override
+    @Transactional
+    public void updatePassword(String username, String encodedPassword) {
+        userRepository.updatePassword(username, encodedPassword);
+        userCache.evictAfterCommit(null, username);
     }
 
     @Transactional
     public User changeUserStatus(Long id, User.Status status) {
         User user = userRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("User not found with ID: " + id));
+                .orElseThrow(() -> UserNotFoundException.withId(id));
+        userCache.evictAfterCommit(id, user.getUsername());
 
         user.setStatus(status);
         return userRepository.save(user);
     }
+
+    @Override
+    public BulkImportResult importUsers(List<User> users) {
+        return userBulkImporter.importUsers(users);
+    }
+
+    @Override
+    @Transactional
+    public int changeUsersStatus(List<Long> ids, User.Status status) {
+        int updated = userRepository.updateStatusByIds(ids, status, LocalDateTime.now());
+        ids.forEach(id -> userCache.evictAfterCommit(id, null));
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int deleteUsers(List<Long> ids) {
+        int deleted = userRepository.deleteByIds(ids);
+        ids.forEach(id -> userCache.evictAfterCommit(id, null));
+        return deleted;
+    }
 }
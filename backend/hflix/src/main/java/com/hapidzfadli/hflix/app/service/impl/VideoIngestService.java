@@ -0,0 +1,237 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.api.exception.UploadException;
+import com.hapidzfadli.hflix.app.service.IngestResult;
+import com.hapidzfadli.hflix.app.service.ProbeResult;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.config.FfmpegProperties;
+import com.hapidzfadli.hflix.config.IngestProperties;
+import lombok.extern.slf4j.Slf4j;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
+import org.apache.tika.Tika;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-pass ingest. Upload chunks are teed through a running SHA-256 and the first
+ * {@code app.ingest.sniff-bytes} go to Tika, all while the chunk is written, so the file
+ * is never read back just to hash or classify it. Non-video content is rejected as soon
+ * as its leading bytes have arrived instead of after the full upload.
+ * <p>
+ * The digest state lives in memory per upload. When it is lost (restart, chunks handled
+ * by another node) the staging file is hashed once at finalize instead.
+ */
+@Slf4j
+@Service
+public class VideoIngestService {
+
+    private static final long HASH_REGION_BYTES = 64L * 1024 * 1024;
+
+    private final IngestProperties properties;
+    private final StorageService storageService;
+    private final FfmpegProperties ffmpegProperties;
+    private final Tika tika = new Tika();
+    private final Map<String, IngestState> states = new ConcurrentHashMap<>();
+
+    public VideoIngestService(IngestProperties properties, StorageService storageService,
+                              FfmpegProperties ffmpegProperties) {
+        this.properties = properties;
+        this.storageService = storageService;
+        this.ffmpegProperties = ffmpegProperties;
+    }
+
+    /**
+     * Starts tapping a chunk written at {@code offset}. The tap works on a copy of the
+     * upload's state, nothing changes until {@link #commit} so a rejected chunk leaves
+     * the digest where it was.
+     */
+    public ChunkTap tap(String uploadId, long offset) {
+        IngestState state = states.get(uploadId);
+        MessageDigest digest = null;
+        byte[] sniffed = new byte[0];
+        boolean continuous = false;
+
+        if (state != null && state.offset == offset) {
+            digest = state.digest != null ? copy(state.digest) : null;
+            sniffed = state.sniffed;
+            continuous = true;
+        } else if (offset == 0) {
+            digest = sha256();
+            continuous = true;
+        }
+        // without the leading bytes there is nothing to sniff, finish() classifies the file instead
+        return new ChunkTap(uploadId, offset, digest, sniffed, continuous && offset < properties.getSniffBytes());
+    }
+
+    /**
+     * Classifies the upload once enough leading bytes were seen (or the upload is
+     * shorter than the sniff window). Throws 415 for anything that is not video.
+     */
+    public Optional<String> inspect(ChunkTap tap, long uploadLength) {
+        if (!tap.sniffing) {
+            return Optional.empty();
+        }
+        boolean complete = tap.sniffed.length >= properties.getSniffBytes()
+                || tap.offset + tap.written >= uploadLength;
+        if (!complete) {
+            return Optional.empty();
+        }
+
+        String type = tika.detect(tap.sniffed);
+        if (!isVideo(type)) {
+            throw UploadException.unsupportedType(type);
+        }
+        tap.detectedType = type;
+        return Optional.of(type);
+    }
+
+    public void commit(ChunkTap tap) {
+        IngestState previous = states.get(tap.uploadId);
+        String detectedType = tap.detectedType != null ? tap.detectedType
+                : previous != null ? previous.detectedType : null;
+        states.put(tap.uploadId, new IngestState(tap.offset + tap.written, tap.digest, tap.sniffed, detectedType));
+    }
+
+    /**
+     * Completes the digest for a fully received upload. Falls back to hashing (and
+     * classifying) the staging file when the chunks were not all seen by this node.
+     */
+    public IngestResult finish(String uploadId, Path staging, long length) throws IOException {
+        IngestState state = states.remove(uploadId);
+        String sha256 = state != null && state.digest != null && state.offset == length
+                ? HexFormat.of().formatHex(state.digest.digest())
+                : hash(staging, length);
+        String detectedType = state != null ? state.detectedType : null;
+        if (detectedType == null) {
+            detectedType = detect(staging);
+            if (!isVideo(detectedType)) {
+                throw UploadException.unsupportedType(detectedType);
+            }
+        }
+        return new IngestResult(sha256, detectedType);
+    }
+
+    public void discard(String uploadId) {
+        states.remove(uploadId);
+    }
+
+    /**
+     * Runs ffprobe against the stored object. For remote storage ffprobe reads through a
+     * presigned URL and only fetches the container headers it needs.
+     */
+    public Optional<ProbeResult> probe(String key) {
+        try {
+            FFmpegProbeResult result = new FFprobe(ffmpegProperties.getProbe().getPath()).probe(storageService.readUrl(key));
+            Integer width = null;
+            Integer height = null;
+            String videoCodec = null;
+            String audioCodec = null;
+            for (FFmpegStream stream : result.getStreams()) {
+                if (stream.codec_type == FFmpegStream.CodecType.VIDEO && videoCodec == null) {
+                    videoCodec = stream.codec_name;
+                    width = stream.width;
+                    height = stream.height;
+                } else if (stream.codec_type == FFmpegStream.CodecType.AUDIO && audioCodec == null) {
+                    audioCodec = stream.codec_name;
+                }
+            }
+            return Optional.of(new ProbeResult(result.getFormat().duration, width, height, videoCodec, audioCodec,
+                    result.getFormat().bit_rate));
+        } catch (IOException | RuntimeException e) {
+            // the original is stored either way, encoding probes again before it starts
+            log.warn("ffprobe failed for {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private boolean isVideo(String type) {
+        return type.startsWith("video/") || properties.getExtraAllowedTypes().contains(type);
+    }
+
+    private String detect(Path staging) throws IOException {
+        try (FileChannel channel = FileChannel.open(staging, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(properties.getSniffBytes());
+            channel.read(buffer, 0);
+            return tika.detect(Arrays.copyOf(buffer.array(), buffer.position()));
+        }
+    }
+
+    private static String hash(Path file, long length) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < length; position += HASH_REGION_BYTES) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_REGION_BYTES, length - position)));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    private record IngestState(long offset, MessageDigest digest, byte[] sniffed, String detectedType) {
+    }
+
+    /**
+     * Sees every byte of one chunk as it is copied to the staging file.
+     */
+    public final class ChunkTap {
+
+        private final String uploadId;
+        private final long offset;
+        private final MessageDigest digest;
+        private final boolean sniffing;
+        private byte[] sniffed;
+        private long written;
+        private String detectedType;
+
+        private ChunkTap(String uploadId, long offset, MessageDigest digest, byte[] sniffed, boolean sniffing) {
+            this.uploadId = uploadId;
+            this.offset = offset;
+            this.digest = digest;
+            this.sniffed = sniffed;
+            this.sniffing = sniffing;
+        }
+
+        public void update(byte[] buffer, int offset, int length) {
+            if (digest != null) {
+                digest.update(buffer, offset, length);
+            }
+            if (sniffing && sniffed.length < properties.getSniffBytes()) {
+                int take = Math.min(length, properties.getSniffBytes() - sniffed.length);
+                byte[] grown = Arrays.copyOf(sniffed, sniffed.length + take);
+                System.arraycopy(buffer, offset, grown, sniffed.length, take);
+                sniffed = grown;
+            }
+            written += length;
+        }
+    }
+}
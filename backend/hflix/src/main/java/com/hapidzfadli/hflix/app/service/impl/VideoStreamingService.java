@@ -0,0 +1,654 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hapidzfadli.hflix.api.exception.VideoNotFoundException;
+import com.hapidzfadli.hflix.app.service.ManifestFilter;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.app.service.VideoFile;
+import com.hapidzfadli.hflix.config.VideoStreamingProperties;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Serves stored renditions with RFC 7233 range support (single and multi-range, If-Range,
+ * conditional requests on the content-hash ETag).
+ * <p>
+ * Files on local storage are served zero-copy: single-range and full responses are handed
+ * to Tomcat's sendfile, so the kernel copies file pages straight to the socket and the
+ * bytes never enter the Java heap. Multi-range responses, and containers without sendfile,
+ * fall back to {@link FileChannel#transferTo} in chunk-size steps. Objects on remote
+ * storage go through the {@link SegmentCache}: hits are served from its off-heap memory
+ * (handed to the connector without a heap copy) or through sendfile from its disk tier,
+ * objects too large to cache whole are cached by requested range, or proxied with ranged
+ * reads when the range is too large as well.
+ * <p>
+ * Playlists and DASH manifests of packaged videos are generated by the
+ * {@link ManifestService}, the segments they list are byte ranges of the stored tracks.
+ * <p>
+ * Open-ended ranges are capped at the chunk size, so a player seek reads one bounded
+ * slice instead of streaming the rest of the file.
+ * <p>
+ * Thumbnails live under versioned keys that are never rewritten, they are served as
+ * immutable.
+ * <p>
+ * Deduplicated videos have no files of their own, their renditions are read from the
+ * keys of the video they duplicate.
+ */
+@Slf4j
+@Service
+public class VideoStreamingService {
+
+    // Tomcat's sendfile contract, see org.apache.tomcat.util.net.Constants
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // below this a buffered write is cheaper than setting up sendfile (same cut-off as DefaultServlet)
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,127}");
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+    private final VideoStreamingProperties properties;
+    private final StorageService storageService;
+    private final StorageLayout storageLayout;
+    private final VideoRepository videoRepository;
+    private final SegmentCache segmentCache;
+    private final ManifestService manifestService;
+    private final String cacheControl;
+    private final Cache<FileKey, String> contentHashes;
+    // video id -> id owning its storage keys, fixed once the video exists
+    private final Cache<Long, Long> storageVideoIds;
+    private final MeterRegistry meterRegistry;
+    // by type and source, both from small fixed sets
+    private final Map<String, Timer> firstByteTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> responseSizes = new ConcurrentHashMap<>();
+
+    public VideoStreamingService(VideoStreamingProperties properties, StorageService storageService,
+                                 StorageLayout storageLayout, VideoRepository videoRepository,
+                                 SegmentCache segmentCache, ManifestService manifestService,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.storageService = storageService;
+        this.storageLayout = storageLayout;
+        this.videoRepository = videoRepository;
+        this.segmentCache = segmentCache;
+        this.manifestService = manifestService;
+        this.cacheControl = "private, max-age=" + properties.getCacheMaxAge().toSeconds();
+        this.contentHashes = Caffeine.newBuilder()
+                .maximumSize(properties.getEtagCacheSize())
+                .build();
+        this.storageVideoIds = Caffeine.newBuilder()
+                .maximumSize(properties.getEtagCacheSize())
+                .build();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param filter caps the ladder of generated master playlists and DASH manifests
+     */
+    public VideoFile resolve(Long videoId, String fileName, ManifestFilter filter) throws IOException {
+        if (!FILE_NAME.matcher(fileName).matches() || fileName.endsWith(LocalStorageService.HASH_SUFFIX)) {
+            throw VideoNotFoundException.withFile(videoId, fileName);
+        }
+
+        Long storageVideoId = storageVideoId(videoId, fileName);
+        if (ManifestService.isManifest(fileName)) {
+            Optional<VideoFile> manifest = manifestService.manifest(videoId, storageVideoId, fileName, filter);
+            if (manifest.isPresent()) {
+                return manifest.get();
+            }
+        }
+
+        return resolveKey(videoId, fileName, storageLayout.encoded(storageVideoId, fileName));
+    }
+
+    /**
+     * A file of the video's thumbnail set {@code version}, see {@link ThumbnailGenerator}.
+     */
+    public VideoFile resolveThumbnail(Long videoId, String version, String fileName) throws IOException {
+        if (!FILE_NAME.matcher(version).matches() || !FILE_NAME.matcher(fileName).matches()
+                || fileName.endsWith(LocalStorageService.HASH_SUFFIX)) {
+            throw VideoNotFoundException.withFile(videoId, version + "/" + fileName);
+        }
+        Long storageVideoId = storageVideoId(videoId, fileName);
+        return resolveKey(videoId, fileName, storageLayout.thumbnail(storageVideoId, version + "/" + fileName));
+    }
+
+    private VideoFile resolveKey(Long videoId, String fileName, String key) throws IOException {
+        Optional<Path> local = storageService.localPath(key);
+        if (local.isEmpty()) {
+            SegmentCache.Segment segment = segmentCache.get(key).orElse(null);
+            if (segment == null) {
+                SegmentCache.Lookup lookup = segmentCache.load(key);
+                StoredObject object = lookup.object();
+                if (object == null) {
+                    throw VideoNotFoundException.withFile(videoId, fileName);
+                }
+                segment = lookup.segment();
+                if (segment == null) {
+                    return new VideoFile(key, null, null, null, false, object.size(),
+                            object.lastModified().toEpochMilli(), quote(object.etag()), contentType(fileName));
+                }
+            }
+            return new VideoFile(key, segment.path(), segment.data(), segment.pending(), true, segment.length(),
+                    segment.lastModified(), quote(segment.etag()), contentType(fileName));
+        }
+
+        Path path = local.get();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw VideoNotFoundException.withFile(videoId, fileName);
+        }
+
+        FileKey fileKey = new FileKey(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        String hash = contentHashes.get(fileKey, this::contentHash);
+        return new VideoFile(key, path, null, null, false, fileKey.length(), fileKey.lastModified(), quote(hash),
+                contentType(fileName));
+    }
+
+    private Long storageVideoId(Long videoId, String fileName) {
+        Long cached = storageVideoIds.getIfPresent(videoId);
+        if (cached != null) {
+            return cached;
+        }
+        // only hits are cached, a video created later must not stay a 404
+        Long storageId = videoRepository.findStorageVideoId(videoId)
+                .orElseThrow(() -> VideoNotFoundException.withFile(videoId, fileName));
+        storageVideoIds.put(videoId, storageId);
+        return storageId;
+    }
+
+    /**
+     * @param startedNanos when the request arrived, {@link System#nanoTime()}, the time to
+     *                     the first byte is measured from it so the lookup is included
+     */
+    public void stream(VideoFile file, long startedNanos, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String type = ManifestService.isManifest(file.key()) ? "manifest" : "media";
+        stream(file, cacheControl, new ResponseMeter(type, startedNanos), request, response);
+    }
+
+    public void streamThumbnail(VideoFile file, long startedNanos, HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        stream(file, IMMUTABLE_CACHE_CONTROL, new ResponseMeter("thumbnail", startedNanos), request, response);
+    }
+
+    private void stream(VideoFile file, String cacheControl, ResponseMeter meter, HttpServletRequest request,
+                        HttpServletResponse response) throws IOException {
+        response.setBufferSize(properties.getBufferSize());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, file.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        if (notModified(file, request)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        List<Range> ranges = rangeHeader != null && rangeApplies(file, request)
+                ? parseRanges(rangeHeader, file.length())
+                : null;
+
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(file.contentType());
+            response.setContentLengthLong(file.length());
+            send(file, new Range(0, file.length() - 1), meter, request, response);
+            return;
+        }
+
+        if (ranges.isEmpty() || ranges.size() > properties.getMaxRanges()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.length());
+            response.setContentLength(0);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            Range range = ranges.get(0);
+            response.setContentType(file.contentType());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(file.length()));
+            response.setContentLengthLong(range.length());
+            send(file, range, meter, request, response);
+        } else {
+            sendMultipart(file, ranges, meter, request, response);
+        }
+    }
+
+    private void send(VideoFile file, Range range, ResponseMeter meter, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        if (isHead(request) || range.length() <= 0) {
+            return;
+        }
+        meter.body(range.length());
+        if (file.path() == null && file.data() == null) {
+            // a segment of a track too large to cache whole
+            Optional<SegmentCache.Segment> cached = segmentCache.range(file.key(), range.start(), range.end());
+            if (cached.isPresent()) {
+                SegmentCache.Segment segment = cached.get();
+                file = new VideoFile(file.key(), segment.path(), segment.data(), segment.pending(), true,
+                        segment.length(), file.lastModified(), file.etag(), file.contentType());
+                range = new Range(0, segment.length() - 1);
+            }
+        }
+        if (file.cached()) {
+            segmentCache.served(range.length());
+        }
+
+        if (file.path() != null && range.length() >= SENDFILE_MIN_BYTES
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat writes the region after the servlet returns, straight from the page cache
+            request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end() + 1);
+            meter.firstByte(file);
+            return;
+        }
+
+        writeBody(file, List.of(range), null, null, meter, response);
+    }
+
+    private void sendMultipart(VideoFile file, List<Range> ranges, ResponseMeter meter, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        String boundary = "hflix_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (Range range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + file.contentType() + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(file.length()) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + range.length();
+        }
+        byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += trailer.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (isHead(request)) {
+            return;
+        }
+        meter.body(contentLength);
+        if (file.cached()) {
+            segmentCache.served(ranges.stream().mapToLong(Range::length).sum());
+        }
+
+        writeBody(file, ranges, partHeaders, trailer, meter, response);
+    }
+
+    private void writeBody(VideoFile file, List<Range> ranges, List<byte[]> partHeaders, byte[] trailer,
+                           ResponseMeter meter, HttpServletResponse response) throws IOException {
+        try {
+            if (file.data() != null) {
+                if (file.pending() != null) {
+                    // a fetch that fails before the first byte still gets an error status
+                    file.pending().awaitBeyond(ranges.get(0).start());
+                }
+                meter.firstByte(file);
+                // cached off-heap, the connector writes the buffer without copying it to the heap
+                OutputStream out = connectorOutput(response);
+                for (int i = 0; i < ranges.size(); i++) {
+                    if (partHeaders != null) {
+                        out.write(partHeaders.get(i));
+                    }
+                    Range range = ranges.get(i);
+                    long position = range.start();
+                    while (position <= range.end()) {
+                        // bytes still being fetched are passed on as they arrive
+                        long available = file.pending() != null ? file.pending().awaitBeyond(position) : file.length();
+                        long end = Math.min(range.end() + 1, available);
+                        ByteBuffer slice = file.data().duplicate()
+                                .limit((int) end)
+                                .position((int) position);
+                        if (out instanceof CoyoteOutputStream connector) {
+                            connector.write(slice);
+                        } else {
+                            Channels.newChannel(out).write(slice);
+                        }
+                        position = end;
+                    }
+                }
+                if (trailer != null) {
+                    out.write(trailer);
+                }
+                return;
+            }
+
+            OutputStream out = response.getOutputStream();
+            if (file.path() == null) {
+                // remote object, proxied range by range from storage
+                for (int i = 0; i < ranges.size(); i++) {
+                    if (partHeaders != null) {
+                        out.write(partHeaders.get(i));
+                    }
+                    Range range = ranges.get(i);
+                    try (InputStream in = storageService.open(file.key(), range.start(), range.length())) {
+                        meter.firstByte(file);
+                        in.transferTo(out);
+                    }
+                }
+            } else {
+                WritableByteChannel target = Channels.newChannel(out);
+                try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+                    meter.firstByte(file);
+                    for (int i = 0; i < ranges.size(); i++) {
+                        if (partHeaders != null) {
+                            out.write(partHeaders.get(i));
+                        }
+                        transfer(channel, ranges.get(i), target);
+                    }
+                }
+            }
+            if (trailer != null) {
+                out.write(trailer);
+            }
+        } catch (IOException e) {
+            if (!response.isCommitted()) {
+                throw e;
+            }
+            // players abort range requests all the time when the user seeks
+            log.debug("Streaming of {} aborted: {}", file.key(), e.getMessage());
+        }
+    }
+
+    /**
+     * Tomcat's own output stream accepts a ByteBuffer, the wrappers filters put around the
+     * response only take byte arrays. The response is committed through the wrappers first
+     * so their commit hooks (security headers) still run.
+     */
+    private static OutputStream connectorOutput(HttpServletResponse response) throws IOException {
+        ServletResponse inner = response;
+        while (inner instanceof ServletResponseWrapper wrapper) {
+            inner = wrapper.getResponse();
+        }
+        if (inner == response) {
+            return response.getOutputStream();
+        }
+        OutputStream out = inner.getOutputStream();
+        if (!(out instanceof CoyoteOutputStream)) {
+            return response.getOutputStream();
+        }
+        response.flushBuffer();
+        return out;
+    }
+
+    private void transfer(FileChannel channel, Range range, WritableByteChannel target) throws IOException {
+        long position = range.start();
+        long remaining = range.length();
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, Math.min(remaining, properties.getChunkSize()), target);
+            if (sent <= 0) {
+                throw new EOFException("File shrank while streaming");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    private boolean notModified(VideoFile file, HttpServletRequest request) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.equals("*") || weakTag(candidate).equals(file.etag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && file.lastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    // If-Range only honours the Range header when the client still holds the same representation
+    private boolean rangeApplies(VideoFile file, HttpServletRequest request) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // strong comparison, a weak tag never matches
+            return ifRange.equals(file.etag());
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && date / 1000 == file.lastModified() / 1000;
+    }
+
+    /**
+     * Parses a byte range set. Returns {@code null} when the header should be ignored
+     * (unknown unit), an empty list when nothing is satisfiable or the syntax is invalid,
+     * otherwise the ranges sorted and with overlapping or adjacent ones merged.
+     */
+    List<Range> parseRanges(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<>();
+        for (String spec : header.substring("bytes=".length()).split(",")) {
+            String value = spec.trim();
+            int dash = value.indexOf('-');
+            if (dash < 0) {
+                return List.of();
+            }
+
+            long start;
+            long end;
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(value.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(value.substring(0, dash));
+                    String last = value.substring(dash + 1);
+                    end = last.isEmpty()
+                            ? start + properties.getChunkSize() - 1
+                            : Long.parseLong(last);
+                    if (end < start) {
+                        return List.of();
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return List.of();
+            }
+
+            if (start < length && start >= 0) {
+                ranges.add(new Range(start, end));
+            }
+        }
+
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>(ranges.size());
+        Range current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            Range next = ranges.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new Range(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * ETag of a local file: the SHA-256 {@link LocalStorageService} stores in a sidecar when
+     * it writes the file, or size and modification time when there is no current sidecar
+     * (files written by an older version or by hand). The request thread never hashes.
+     */
+    private String contentHash(FileKey key) {
+        Path sidecar = LocalStorageService.sidecar(key.path());
+        try {
+            if (Files.getLastModifiedTime(sidecar).toMillis() >= key.lastModified()) {
+                String stored = Files.readString(sidecar, StandardCharsets.US_ASCII).trim();
+                if (stored.length() == 64) {
+                    return stored;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // not hashed
+        } catch (IOException e) {
+            log.debug("Could not read the content hash of {}: {}", key.path(), e.getMessage());
+        }
+        return Long.toHexString(key.length()) + "-" + Long.toHexString(key.lastModified());
+    }
+
+    static String contentType(String fileName) {
+        if (fileName.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        if (fileName.endsWith(".vtt")) {
+            return "text/vtt";
+        }
+        return MediaTypeFactory.getMediaType(fileName)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+
+    private static String quote(String tag) {
+        return tag.startsWith("\"") ? tag : "\"" + tag + "\"";
+    }
+
+    private static String weakTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isHead(HttpServletRequest request) {
+        return "HEAD".equals(request.getMethod());
+    }
+
+    record Range(long start, long end) {
+
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long total) {
+            return "bytes " + start + "-" + end + "/" + total;
+        }
+    }
+
+    private Timer firstByteTimer(String type, String source) {
+        return firstByteTimers.computeIfAbsent(type + '/' + source, key -> Timer.builder("video.stream.first.byte")
+                .description("Time from the request to the first body byte handed to the connector")
+                .tag("type", type)
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry));
+    }
+
+    private DistributionSummary responseSize(String type) {
+        return responseSizes.computeIfAbsent(type, key -> DistributionSummary.builder("video.stream.response.size")
+                .description("Body bytes of streamed responses")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(256.0)
+                .maximumExpectedValue(64.0 * 1024 * 1024)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Meters one response. The source is where the body comes from: the segment cache's
+     * memory or disk tier, a local file, or the origin (proxied or still being fetched).
+     * It is only known once a range has been resolved to a cached part.
+     */
+    private final class ResponseMeter {
+
+        private final String type;
+        private final long startedNanos;
+        private boolean firstByte;
+
+        private ResponseMeter(String type, long startedNanos) {
+            this.type = type;
+            this.startedNanos = startedNanos;
+        }
+
+        void firstByte(VideoFile file) {
+            if (firstByte) {
+                return;
+            }
+            firstByte = true;
+            String source = file.data() != null ? (file.pending() != null ? "origin" : "memory")
+                    : file.path() != null ? (file.cached() ? "disk" : "local")
+                    : "origin";
+            firstByteTimer(type, source).record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void body(long bytes) {
+            responseSize(type).record(bytes);
+        }
+    }
+
+    private record FileKey(Path path, long length, long lastModified) {
+    }
+}
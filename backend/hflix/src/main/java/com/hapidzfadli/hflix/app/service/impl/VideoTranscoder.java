@@ -0,0 +1,508 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.TranscodeResult;
+import com.hapidzfadli.hflix.config.EncodingProperties;
+import com.hapidzfadli.hflix.config.FfmpegProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Encodes a source into a ladder of fMP4 renditions, one file per rendition plus one for
+ * the audio track, indexed by {@link SegmentIndexer} so HLS and DASH manifests can be
+ * generated from the same files. The source is decoded once per process and a split/scale
+ * filter graph feeds every rendition, instead of one ffmpeg per rendition each decoding the
+ * whole file again.
+ * <p>
+ * Sources longer than {@code video.encoding.chunking-threshold} are encoded split-encode-
+ * stitch: the video is cut at keyframes into chunks of about {@code chunk-length} (stream
+ * copy, no decode), the chunks and the audio track are encoded in parallel on a fork-join
+ * pool, each rendition's chunks are concatenated without re-encoding and the result is
+ * packaged with stream copy. Chunk durations are checked against the cut points
+ * before anything is joined. A join that would drift falls back to the single process.
+ * <p>
+ * Keyframes are forced on every segment boundary of the source timeline and scene-cut
+ * keyframes are off, so all renditions switch at the same points. Renditions taller than
+ * the source are skipped. CPU-seconds per output minute are published as
+ * {@code video.encoding.cpu.per.output.minute}.
+ */
+@Slf4j
+@Service
+public class VideoTranscoder implements DisposableBean {
+
+    private static final Pattern RESOLUTION = Pattern.compile("(\\d+)[pP]|(\\d)[kK]");
+    private static final String CHUNK_LIST = "chunks.csv";
+    private static final String AUDIO_TRACK = "audio";
+
+    private final FfmpegProperties ffmpegProperties;
+    private final EncodingProperties properties;
+    private final FfmpegRunner runner;
+    private final SegmentIndexer indexer;
+    private final ForkJoinPool chunkPool;
+    private final DistributionSummary cpuPerOutputMinute;
+
+    public VideoTranscoder(FfmpegProperties ffmpegProperties, EncodingProperties properties, FfmpegRunner runner,
+                           SegmentIndexer indexer, MeterRegistry meterRegistry) {
+        this.ffmpegProperties = ffmpegProperties;
+        this.properties = properties;
+        this.runner = runner;
+        this.indexer = indexer;
+        // tasks block on ffmpeg, the runner's permits are what bounds the processes
+        this.chunkPool = new ForkJoinPool(runner.getSlots());
+        this.cpuPerOutputMinute = DistributionSummary.builder("video.encoding.cpu.per.output.minute")
+                .description("ffmpeg CPU-seconds spent per minute of encoded output")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encodes {@code source} into {@code outputDir}: a fragmented {@code <name>.mp4} per
+     * rendition, {@code audio.mp4} when the source has sound, and the segment index.
+     * Scratch files go to siblings of {@code outputDir}.
+     *
+     * @param progress receives the completed fraction, 0 to 1
+     */
+    public TranscodeResult transcode(Path source, Path outputDir, DoubleConsumer progress) throws IOException {
+        SourceInfo info = probe(source);
+        List<Rendition> ladder = ladder(info.shortSide());
+
+        FfmpegRunner.Outcome outcome = null;
+        if (info.duration() >= properties.getChunkingThreshold().toSeconds() && runner.getSlots() > 1) {
+            try {
+                outcome = transcodeChunked(source, info, ladder, outputDir, progress);
+            } catch (ChunkJoinException e) {
+                log.warn("Chunked encode of {} failed validation, encoding in one process: {}", source, e.getMessage());
+                FileSystemUtils.deleteRecursively(outputDir);
+                Files.createDirectories(outputDir);
+            } finally {
+                FileSystemUtils.deleteRecursively(chunkDir(outputDir));
+            }
+        }
+        if (outcome == null) {
+            outcome = runner.run(singleCommand(source, info, ladder, outputDir), stderrFile(outputDir, "ffmpeg"),
+                    seconds -> report(progress, seconds, info.duration()));
+        }
+        indexer.index(outputDir, info.duration());
+
+        List<Path> outputs;
+        try (Stream<Path> files = Files.list(outputDir)) {
+            outputs = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        TranscodeResult result = new TranscodeResult(outputs, ladder.stream().map(Rendition::name).toList(),
+                info.duration(), outcome.cpuSeconds(), outcome.maxRssKb());
+        cpuPerOutputMinute.record(result.cpuSecondsPerOutputMinute());
+        log.info("Encoded {} renditions {} of {}s output in {} CPU-seconds ({} per output minute, peak RSS {} kB)",
+                ladder.size(), result.renditions(), info.duration(), String.format(Locale.ROOT, "%.1f", result.cpuSeconds()),
+                String.format(Locale.ROOT, "%.1f", result.cpuSecondsPerOutputMinute()), result.maxRssKb());
+        return result;
+    }
+
+    private FFmpegBuilder singleCommand(Path source, SourceInfo info, List<Rendition> ladder, Path outputDir) {
+        FFmpegOutputBuilder output = runner.builder()
+                .setInput(source.toString())
+                .setComplexFilter(scaleFilter(ladder, info.landscape()))
+                .addOutput(outputDir.resolve("%v.m3u8").toString())
+                .setFormat("hls")
+                .setVideoCodec("libx264");
+
+        for (int i = 0; i < ladder.size(); i++) {
+            output.addExtraArgs("-map", "[v" + i + "]");
+            rateControl(output, ":v:" + i, ladder.get(i));
+        }
+        if (info.hasAudio()) {
+            output.addExtraArgs("-map", "0:a:0");
+            output.setAudioCodec("aac").setAudioBitRate(properties.getAudioBitrate());
+        }
+        keyframes(output, 0);
+        hls(output, outputDir, ladder, info.hasAudio());
+        return output.done();
+    }
+
+    private FfmpegRunner.Outcome transcodeChunked(Path source, SourceInfo info, List<Rendition> ladder, Path outputDir,
+                                                  DoubleConsumer progress) throws IOException {
+        Path chunkDir = chunkDir(outputDir);
+        FileSystemUtils.deleteRecursively(chunkDir);
+        Files.createDirectories(chunkDir);
+
+        // stream copy cuts at the first keyframe after each chunk length
+        FFmpegBuilder split = runner.builder()
+                .setInput(source.toString())
+                .addOutput(chunkDir.resolve("chunk_%05d.mkv").toString())
+                .setFormat("segment")
+                .addExtraArgs("-map", "0:v:0", "-c", "copy",
+                        "-segment_time", String.valueOf(properties.getChunkLength().toSeconds()),
+                        "-reset_timestamps", "1",
+                        "-segment_list", chunkDir.resolve(CHUNK_LIST).toString(),
+                        "-segment_list_type", "csv")
+                .done();
+        FfmpegRunner.Outcome total = runner.run(split, stderrFile(chunkDir, "split"), null);
+        List<Chunk> chunks = readChunks(chunkDir);
+        validateJoins(chunks, info);
+        log.info("Encoding {} as {} chunks on {} slots", source, chunks.size(), runner.getSlots());
+
+        Map<Integer, Double> positions = new ConcurrentHashMap<>();
+        AtomicReference<FfmpegRunner.Outcome> outcome = new AtomicReference<>(total);
+        List<EncodeTask> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> {
+                FFmpegBuilder encode = chunkCommand(chunk, info, ladder, chunkDir);
+                outcome.accumulateAndGet(runner.run(encode, stderrFile(chunkDir, "encode_" + chunk.index()), seconds -> {
+                    positions.put(chunk.index(), seconds);
+                    report(progress, positions.values().stream().mapToDouble(Double::doubleValue).sum(), info.duration());
+                }), FfmpegRunner.Outcome::plus);
+                validateChunk(chunk, ladder, chunkDir, info);
+            });
+        }
+        if (info.hasAudio()) {
+            // audio is cheap, encoding it whole avoids priming gaps at every join
+            tasks.add(() -> outcome.accumulateAndGet(runner.run(runner.builder()
+                    .setInput(source.toString())
+                    .addOutput(chunkDir.resolve("audio.m4a").toString())
+                    .addExtraArgs("-map", "0:a:0", "-vn")
+                    .setAudioCodec("aac")
+                    .setAudioBitRate(properties.getAudioBitrate())
+                    .done(), stderrFile(chunkDir, "audio"), null), FfmpegRunner.Outcome::plus));
+        }
+        forkJoin(tasks);
+
+        // each rendition's chunks joined by the concat demuxer, no re-encode
+        List<EncodeTask> joins = new ArrayList<>();
+        for (Rendition rendition : ladder) {
+            joins.add(() -> {
+                Path list = chunkDir.resolve(rendition.name() + ".txt");
+                Files.write(list, chunks.stream()
+                        .map(chunk -> "file '" + chunkOutput(chunkDir, chunk, rendition).getFileName() + "'")
+                        .toList());
+                outcome.accumulateAndGet(runner.run(runner.builder()
+                        .setFormat("concat")
+                        .addExtraArgs("-safe", "0")
+                        .setInput(list.toString())
+                        .addOutput(chunkDir.resolve(rendition.name() + ".mp4").toString())
+                        .addExtraArgs("-c", "copy")
+                        .done(), stderrFile(chunkDir, "concat_" + rendition.name()), null), FfmpegRunner.Outcome::plus);
+            });
+        }
+        forkJoin(joins);
+
+        FFmpegBuilder packaging = runner.builder();
+        for (Rendition rendition : ladder) {
+            packaging.addInput(chunkDir.resolve(rendition.name() + ".mp4").toString());
+        }
+        if (info.hasAudio()) {
+            packaging.addInput(chunkDir.resolve("audio.m4a").toString());
+        }
+        FFmpegOutputBuilder output = packaging.addOutput(outputDir.resolve("%v.m3u8").toString())
+                .setFormat("hls")
+                .addExtraArgs("-c", "copy");
+        for (int i = 0; i < ladder.size(); i++) {
+            output.addExtraArgs("-map", i + ":v:0");
+        }
+        if (info.hasAudio()) {
+            output.addExtraArgs("-map", ladder.size() + ":a:0");
+        }
+        hls(output, outputDir, ladder, info.hasAudio());
+        return outcome.accumulateAndGet(runner.run(output.done(), stderrFile(chunkDir, "package"), null),
+                FfmpegRunner.Outcome::plus);
+    }
+
+    private FFmpegBuilder chunkCommand(Chunk chunk, SourceInfo info, List<Rendition> ladder, Path chunkDir) {
+        FFmpegBuilder builder = runner.builder()
+                .setInput(chunkDir.resolve(chunk.file()).toString())
+                .setComplexFilter(scaleFilter(ladder, info.landscape()));
+        for (int i = 0; i < ladder.size(); i++) {
+            FFmpegOutputBuilder output = builder.addOutput(chunkOutput(chunkDir, chunk, ladder.get(i)).toString())
+                    .setFormat("mp4")
+                    .setVideoCodec("libx264")
+                    .addExtraArgs("-map", "[v" + i + "]", "-an");
+            rateControl(output, ":v", ladder.get(i));
+            keyframes(output, chunk.start());
+            builder = output.done();
+        }
+        return builder;
+    }
+
+    /**
+     * Runs the tasks on the chunk pool, splitting the list in halves until single tasks
+     * remain. The first failure stops tasks that have not started yet.
+     */
+    private void forkJoin(List<EncodeTask> tasks) throws IOException {
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            chunkPool.invoke(new EncodeBatch(tasks, 0, tasks.size(), failed));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // an encoded chunk has to last exactly as long as its cut, or timestamps drift at the join
+    private void validateChunk(Chunk chunk, List<Rendition> ladder, Path chunkDir, SourceInfo info) throws IOException {
+        double tolerance = 2 / info.frameRate() + 0.01;
+        FFprobe ffprobe = new FFprobe(ffmpegProperties.getProbe().getPath());
+        for (Rendition rendition : ladder) {
+            FFmpegProbeResult probe = ffprobe.probe(chunkOutput(chunkDir, chunk, rendition).toString());
+            double start = probe.getStreams().isEmpty() ? 0 : probe.getStreams().get(0).start_time;
+            double duration = probe.getFormat().duration;
+            if (Math.abs(start) > tolerance || Math.abs(duration - chunk.duration()) > tolerance) {
+                throw new ChunkJoinException(String.format(Locale.ROOT,
+                        "chunk %d (%s) starts at %.3fs and lasts %.3fs, expected 0 and %.3fs",
+                        chunk.index(), rendition.name(), start, duration, chunk.duration()));
+            }
+        }
+    }
+
+    // the cuts have to tile the source timeline without gaps or overlaps
+    private static void validateJoins(List<Chunk> chunks, SourceInfo info) {
+        double tolerance = 2 / info.frameRate() + 0.01;
+        for (int i = 1; i < chunks.size(); i++) {
+            Chunk previous = chunks.get(i - 1);
+            Chunk next = chunks.get(i);
+            if (Math.abs(previous.end() - next.start()) > tolerance) {
+                throw new ChunkJoinException(String.format(Locale.ROOT,
+                        "gap between chunk %d ending at %.3fs and chunk %d starting at %.3fs",
+                        previous.index(), previous.end(), next.index(), next.start()));
+            }
+        }
+        double covered = chunks.get(chunks.size() - 1).end() - chunks.get(0).start();
+        if (chunks.get(0).start() > tolerance || Math.abs(covered - info.duration()) > Math.max(0.5, tolerance)) {
+            throw new ChunkJoinException(String.format(Locale.ROOT,
+                    "chunks cover %.3fs of a %.3fs source", covered, info.duration()));
+        }
+    }
+
+    private static List<Chunk> readChunks(Path chunkDir) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        for (String line : Files.readAllLines(chunkDir.resolve(CHUNK_LIST))) {
+            String[] fields = line.split(",");
+            if (fields.length >= 3) {
+                chunks.add(new Chunk(chunks.size(), fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            }
+        }
+        if (chunks.isEmpty()) {
+            throw new IOException("Splitting produced no chunks");
+        }
+        return chunks;
+    }
+
+    private String scaleFilter(List<Rendition> ladder, boolean landscape) {
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(ladder.size());
+        for (int i = 0; i < ladder.size(); i++) {
+            filter.append("[s").append(i).append(']');
+        }
+        for (int i = 0; i < ladder.size(); i++) {
+            int height = ladder.get(i).height();
+            // scale the short side so portrait sources get the same ladder
+            String size = landscape ? "-2:" + height : height + ":-2";
+            filter.append(";[s").append(i).append("]scale=").append(size).append("[v").append(i).append(']');
+        }
+        return filter.toString();
+    }
+
+    private void rateControl(FFmpegOutputBuilder output, String specifier, Rendition rendition) {
+        output.addExtraArgs("-b" + specifier, String.valueOf(rendition.bitrate()),
+                "-maxrate" + specifier, String.valueOf(rendition.bitrate() * 3 / 2),
+                "-bufsize" + specifier, String.valueOf(rendition.bitrate() * 2));
+    }
+
+    /**
+     * Forces keyframes on the segment grid of the source timeline. {@code offset} is where
+     * the input starts on that timeline, so chunks keep the grid of the whole file.
+     */
+    private void keyframes(FFmpegOutputBuilder output, double offset) {
+        int segment = properties.getSegmentSeconds();
+        double shift = offset % segment;
+        output.addExtraArgs(
+                "-preset", properties.getPreset(),
+                "-threads", String.valueOf(properties.getThreadsPerJob()),
+                "-force_key_frames", String.format(Locale.ROOT, "expr:gte(t,n_forced*%d-%.6f)", segment, shift),
+                "-sc_threshold", "0");
+    }
+
+    /**
+     * Packages every stream into its own single-file fMP4. The byte-range playlists ffmpeg
+     * writes alongside are only read by the indexer, the audio stream is a track of its own
+     * so renditions do not each carry a copy of it.
+     */
+    private void hls(FFmpegOutputBuilder output, Path outputDir, List<Rendition> ladder, boolean hasAudio) {
+        List<String> variants = new ArrayList<>();
+        if (hasAudio) {
+            variants.add("a:0,agroup:audio,name:" + AUDIO_TRACK);
+        }
+        for (int i = 0; i < ladder.size(); i++) {
+            variants.add("v:" + i + (hasAudio ? ",agroup:audio" : "") + ",name:" + ladder.get(i).name());
+        }
+        output.addExtraArgs(
+                "-hls_time", String.valueOf(properties.getSegmentSeconds()),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_type", "fmp4",
+                "-hls_flags", "independent_segments+single_file",
+                "-hls_segment_filename", outputDir.resolve("%v.mp4").toString(),
+                "-var_stream_map", String.join(" ", variants));
+    }
+
+    /**
+     * The configured resolutions that fit the source, lowest first. A source below the
+     * smallest one still gets a single rendition at its own size.
+     */
+    private List<Rendition> ladder(int sourceHeight) {
+        List<Rendition> ladder = properties.getResolutions().stream()
+                .map(VideoTranscoder::height)
+                .filter(height -> height > 0 && height <= sourceHeight)
+                .distinct()
+                .sorted()
+                .map(height -> new Rendition(height + "p", height, bitrate(height)))
+                .collect(Collectors.toList());
+        if (ladder.isEmpty()) {
+            int height = sourceHeight - sourceHeight % 2;
+            ladder.add(new Rendition(height + "p", height, bitrate(height)));
+        }
+        return ladder;
+    }
+
+    private SourceInfo probe(Path source) throws IOException {
+        FFmpegProbeResult probe = new FFprobe(ffmpegProperties.getProbe().getPath()).probe(source.toString());
+        FFmpegStream video = probe.getStreams().stream()
+                .filter(stream -> stream.codec_type == FFmpegStream.CodecType.VIDEO)
+                .findFirst()
+                .orElseThrow(() -> new IOException("Source has no video stream"));
+        boolean hasAudio = probe.getStreams().stream().anyMatch(stream -> stream.codec_type == FFmpegStream.CodecType.AUDIO);
+        double frameRate = video.r_frame_rate != null && video.r_frame_rate.doubleValue() > 0
+                ? video.r_frame_rate.doubleValue() : 25;
+        return new SourceInfo(probe.getFormat().duration, video.width, video.height, frameRate, hasAudio);
+    }
+
+    private static void report(DoubleConsumer progress, double seconds, double duration) {
+        if (duration > 0) {
+            progress.accept(Math.min(1.0, seconds / duration));
+        }
+    }
+
+    private static int height(String resolution) {
+        Matcher matcher = RESOLUTION.matcher(resolution.trim());
+        if (!matcher.matches()) {
+            return 0;
+        }
+        return matcher.group(1) != null ? Integer.parseInt(matcher.group(1)) : Integer.parseInt(matcher.group(2)) * 540;
+    }
+
+    // roughly the usual H.264 ladder, scaled by pixel count in between
+    private static long bitrate(int height) {
+        return Math.max(200_000, Math.round(2_800_000 * Math.pow(height / 720.0, 1.6)));
+    }
+
+    private static Path chunkDir(Path outputDir) {
+        return outputDir.resolveSibling("chunks");
+    }
+
+    private static Path chunkOutput(Path chunkDir, Chunk chunk, Rendition rendition) {
+        return chunkDir.resolve(String.format(Locale.ROOT, "encoded_%05d_%s.mp4", chunk.index(), rendition.name()));
+    }
+
+    // logs sit next to the step's directory so they never end up in the outputs
+    private static Path stderrFile(Path dir, String step) {
+        return dir.resolveSibling(step + ".log");
+    }
+
+    @Override
+    public void destroy() {
+        chunkPool.shutdownNow();
+    }
+
+    private record Rendition(String name, int height, long bitrate) {
+    }
+
+    private record SourceInfo(double duration, int width, int height, double frameRate, boolean hasAudio) {
+
+        int shortSide() {
+            return Math.min(width, height);
+        }
+
+        boolean landscape() {
+            return width >= height;
+        }
+    }
+
+    private record Chunk(int index, String file, double start, double end) {
+
+        double duration() {
+            return end - start;
+        }
+    }
+
+    @FunctionalInterface
+    private interface EncodeTask {
+        void run() throws IOException;
+    }
+
+    private static final class EncodeBatch extends RecursiveAction {
+
+        private final List<EncodeTask> tasks;
+        private final int from;
+        private final int to;
+        private final AtomicBoolean failed;
+
+        private EncodeBatch(List<EncodeTask> tasks, int from, int to, AtomicBoolean failed) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+            this.failed = failed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EncodeBatch(tasks, from, middle, failed), new EncodeBatch(tasks, middle, to, failed));
+                return;
+            }
+            if (to == from || failed.get()) {
+                return;
+            }
+            try {
+                tasks.get(from).run();
+            } catch (IOException e) {
+                failed.set(true);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                failed.set(true);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Encoded chunks would not line up on the source timeline.
+     */
+    private static final class ChunkJoinException extends RuntimeException {
+
+        private ChunkJoinException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.api.exception.UploadException;
+import com.hapidzfadli.hflix.api.exception.UserNotFoundException;
+import com.hapidzfadli.hflix.app.service.EncodingQueue;
+import com.hapidzfadli.hflix.app.service.IngestResult;
+import com.hapidzfadli.hflix.app.service.ProbeResult;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.UserService;
+import com.hapidzfadli.hflix.config.UploadProperties;
+import com.hapidzfadli.hflix.domain.entity.Video;
+import com.hapidzfadli.hflix.domain.entity.VideoUpload;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import com.hapidzfadli.hflix.domain.repository.VideoUploadRepository;
+import com.hapidzfadli.hflix.model.EncodingJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads in the style of tus. The upload body never goes through servlet
+ * multipart: each PATCH streams its chunk straight into a preallocated staging file at
+ * the chunk's offset. The stored offset only advances once the chunk is on disk and its
+ * checksum (if sent) matches, so a dropped connection costs at most one chunk.
+ * <p>
+ * Finalize hands the staging file to storage as a move, a local backend renames it into
+ * place and a remote one uploads it as a parallel multipart transfer. Chunks pass through
+ * {@link VideoIngestService} on the way in, so by then the content hash is known: a file
+ * that is already stored is not stored or encoded again, the new video points at it.
+ * New originals are handed to the {@link EncodingQueue}.
+ */
+@Slf4j
+@Service
+public class VideoUploadService {
+
+    // duplicates are resolved against videos whose original is in storage
+    private static final Set<Video.Status> STORED = EnumSet.of(
+            Video.Status.UPLOADED, Video.Status.PROCESSING, Video.Status.READY);
+
+    private final VideoUploadRepository uploadRepository;
+    private final VideoRepository videoRepository;
+    private final UserService userService;
+    private final StorageService storageService;
+    private final StorageLayout storageLayout;
+    private final VideoIngestService ingestService;
+    private final EncodingQueue encodingQueue;
+    private final UploadProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Path stagingDir;
+
+    // one chunk at a time per upload, a second PATCH racing the first gets a 409
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public VideoUploadService(VideoUploadRepository uploadRepository, VideoRepository videoRepository,
+                              UserService userService, StorageService storageService, StorageLayout storageLayout,
+                              VideoIngestService ingestService, EncodingQueue encodingQueue,
+                              UploadProperties properties, TransactionTemplate transactionTemplate) {
+        this.uploadRepository = uploadRepository;
+        this.videoRepository = videoRepository;
+        this.userService = userService;
+        this.storageService = storageService;
+        this.storageLayout = storageLayout;
+        this.ingestService = ingestService;
+        this.encodingQueue = encodingQueue;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.stagingDir = Paths.get(properties.getStagingDir()).toAbsolutePath().normalize();
+    }
+
+    public VideoUpload create(String username, String fileName, long length, String contentType, String title)
+            throws IOException {
+        if (length <= 0) {
+            throw UploadException.invalid("Upload length must be positive");
+        }
+        if (length > properties.getMaxFileSize()) {
+            throw UploadException.tooLarge("Upload exceeds the maximum file size of " + properties.getMaxFileSize() + " bytes");
+        }
+
+        Long ownerId = ownerId(username);
+        String uploadId = UUID.randomUUID().toString();
+        Path staging = stagingDir.resolve(uploadId + ".part");
+
+        Files.createDirectories(stagingDir);
+        try (RandomAccessFile file = new RandomAccessFile(staging.toFile(), "rw")) {
+            // sized up front so every chunk lands at its offset, sparse until written
+            file.setLength(length);
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                Video video = new Video();
+                video.setOwnerId(ownerId);
+                video.setTitle(StringUtils.hasText(title) ? title : fileName);
+                video.setOriginalFileName(fileName);
+                video.setContentType(contentType);
+                video.setSizeBytes(length);
+                video = videoRepository.save(video);
+
+                VideoUpload upload = new VideoUpload();
+                upload.setId(uploadId);
+                upload.setVideoId(video.getId());
+                upload.setOwnerId(ownerId);
+                upload.setUploadLength(length);
+                upload.setUploadOffset(0);
+                upload.setStagingPath(staging.toString());
+                upload.setExpiresAt(LocalDateTime.now().plus(properties.getExpiry()));
+                return uploadRepository.save(upload);
+            });
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(staging);
+            throw e;
+        }
+    }
+
+    public VideoUpload find(String uploadId, String username) {
+        VideoUpload upload = uploadRepository.findById(uploadId)
+                .orElseThrow(() -> UploadException.notFound(uploadId));
+        if (!upload.getOwnerId().equals(ownerId(username))) {
+            // do not reveal uploads of other users
+            throw UploadException.notFound(uploadId);
+        }
+        return upload;
+    }
+
+    /**
+     * Writes one chunk at {@code offset} and returns the new offset.
+     *
+     * @param checksum value of the tus {@code Upload-Checksum} header ("sha256 base64digest"), may be null
+     */
+    public long writeChunk(String uploadId, String username, long offset, long contentLength, String checksum,
+                           InputStream body) throws IOException {
+        VideoUpload upload = find(uploadId, username);
+        if (upload.getStatus() != VideoUpload.Status.IN_PROGRESS || offset != upload.getUploadOffset()) {
+            throw UploadException.offsetConflict(upload.getUploadOffset());
+        }
+        if (contentLength > properties.getMaxChunkSize()) {
+            throw UploadException.tooLarge("Chunk exceeds the maximum of " + properties.getMaxChunkSize() + " bytes");
+        }
+        long limit = upload.getUploadLength() - offset;
+        if (contentLength > limit) {
+            throw UploadException.invalid("Chunk runs past the declared upload length");
+        }
+
+        ChunkChecksum expected = ChunkChecksum.parse(checksum);
+        if (!inFlight.add(uploadId)) {
+            throw UploadException.busy(upload.getUploadOffset());
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(upload.getStagingPath()), StandardOpenOption.WRITE)) {
+            VideoIngestService.ChunkTap tap = ingestService.tap(uploadId, offset);
+            ChunkCopy copy = new ChunkCopy(channel, offset, Math.min(limit, properties.getMaxChunkSize()),
+                    expected, tap, properties.getBufferSize());
+            try {
+                copy.from(body);
+            } catch (IOException e) {
+                // the client went away mid-chunk, keep what arrived unless it still had to be verified
+                if (expected == null && copy.written > 0) {
+                    channel.force(false);
+                    advance(uploadId, offset, offset + copy.written);
+                    ingestService.commit(tap);
+                }
+                throw e;
+            }
+
+            if (expected != null && !expected.matches()) {
+                throw UploadException.checksumMismatch(offset);
+            }
+            try {
+                ingestService.inspect(tap, upload.getUploadLength());
+            } catch (UploadException e) {
+                // not a video, drop it now rather than after the whole file arrived
+                discard(upload);
+                throw e;
+            }
+            // the offset must never point past bytes that a crash could lose
+            channel.force(false);
+            long advanced = advance(uploadId, offset, offset + copy.written);
+            ingestService.commit(tap);
+            return advanced;
+        } finally {
+            inFlight.remove(uploadId);
+        }
+    }
+
+    /**
+     * Moves the complete staging file to storage and marks the video as uploaded. Calling
+     * it again on a finished upload returns the video unchanged.
+     */
+    public Video finalizeUpload(String uploadId, String username) throws IOException {
+        VideoUpload upload = find(uploadId, username);
+        Video video = videoRepository.findById(upload.getVideoId())
+                .orElseThrow(() -> UploadException.notFound(uploadId));
+        if (upload.getStatus() == VideoUpload.Status.COMPLETED) {
+            return video;
+        }
+        if (upload.getUploadOffset() != upload.getUploadLength()) {
+            throw UploadException.incomplete(upload.getUploadOffset(), upload.getUploadLength());
+        }
+        if (!inFlight.add(uploadId)) {
+            throw UploadException.busy(upload.getUploadOffset());
+        }
+
+        try {
+            Path staging = Path.of(upload.getStagingPath());
+            IngestResult ingest;
+            try {
+                ingest = ingestService.finish(uploadId, staging, upload.getUploadLength());
+            } catch (UploadException e) {
+                discard(upload);
+                throw e;
+            }
+            video.setContentSha256(ingest.sha256());
+
+            Optional<Video> stored = videoRepository.findFirstByContentSha256AndStatusInOrderByIdAsc(ingest.sha256(), STORED);
+            if (stored.isPresent()) {
+                Files.deleteIfExists(staging);
+                Video source = stored.get();
+                log.info("Upload {} duplicates video {}, reusing its stored original", uploadId, source.getStorageVideoId());
+                video.setSourceVideoId(source.getStorageVideoId());
+                video.setOriginalKey(source.getOriginalKey());
+                video.setThumbnailVersion(source.getThumbnailVersion());
+                applyProbe(video, new ProbeResult(source.getDurationSeconds(), source.getWidth(), source.getHeight(),
+                        source.getVideoCodec(), source.getAudioCodec(), source.getBitRate()));
+                return complete(upload, video, source.getStatus());
+            }
+
+            String key = storageLayout.original(video.getId(), sourceFileName(video.getOriginalFileName()));
+            storageService.move(key, staging, video.getContentType());
+            video.setOriginalKey(key);
+            ingestService.probe(key).ifPresent(probe -> applyProbe(video, probe));
+            Video uploaded = complete(upload, video, Video.Status.UPLOADED);
+            encodingQueue.submit(new EncodingJob(uploaded.getId(), key, Instant.now()));
+            return uploaded;
+        } finally {
+            inFlight.remove(uploadId);
+        }
+    }
+
+    public void cancel(String uploadId, String username) throws IOException {
+        VideoUpload upload = find(uploadId, username);
+        if (upload.getStatus() == VideoUpload.Status.COMPLETED) {
+            throw UploadException.invalid("Upload is already finalized");
+        }
+        discard(upload);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.cleanup-interval-ms:600000}")
+    public void removeExpired() {
+        List<VideoUpload> expired = uploadRepository.findTop100ByStatusAndExpiresAtBefore(
+                VideoUpload.Status.IN_PROGRESS, LocalDateTime.now());
+        for (VideoUpload upload : expired) {
+            try {
+                discard(upload);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not remove expired upload {}: {}", upload.getId(), e.getMessage());
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("Removed {} expired uploads", expired.size());
+        }
+    }
+
+    private Video complete(VideoUpload upload, Video video, Video.Status status) {
+        return transactionTemplate.execute(tx -> {
+            upload.setStatus(VideoUpload.Status.COMPLETED);
+            uploadRepository.save(upload);
+            video.setStatus(status);
+            return videoRepository.save(video);
+        });
+    }
+
+    private static void applyProbe(Video video, ProbeResult probe) {
+        video.setDurationSeconds(probe.durationSeconds());
+        video.setWidth(probe.width());
+        video.setHeight(probe.height());
+        video.setVideoCodec(probe.videoCodec());
+        video.setAudioCodec(probe.audioCodec());
+        video.setBitRate(probe.bitRate());
+    }
+
+    private void discard(VideoUpload upload) throws IOException {
+        ingestService.discard(upload.getId());
+        Files.deleteIfExists(Path.of(upload.getStagingPath()));
+        transactionTemplate.executeWithoutResult(status -> {
+            uploadRepository.deleteById(upload.getId());
+            videoRepository.findById(upload.getVideoId())
+                    .filter(video -> video.getStatus() == Video.Status.UPLOADING)
+                    .ifPresent(videoRepository::delete);
+        });
+    }
+
+    private long advance(String uploadId, long expected, long offset) {
+        Integer updated = transactionTemplate.execute(status -> uploadRepository.advanceOffset(uploadId, expected, offset));
+        if (updated == null || updated == 0) {
+            throw UploadException.offsetConflict(uploadRepository.findById(uploadId)
+                    .map(VideoUpload::getUploadOffset).orElse(expected));
+        }
+        return offset;
+    }
+
+    // the user supplied name only contributes its extension to the storage key
+    private static String sourceFileName(String fileName) {
+        String extension = "";
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            if (dot >= 0 && dot < fileName.length() - 1) {
+                extension = fileName.substring(dot).toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9.]", "");
+            }
+        }
+        return "source" + (extension.length() > 1 && extension.length() <= 10 ? extension : "");
+    }
+
+    private Long ownerId(String username) {
+        return userService.findByUsername(username)
+                .orElseThrow(() -> new UserNotFoundException("User not found: " + username))
+                .getId();
+    }
+
+    /**
+     * Copies the request body into the staging file at the chunk offset, feeding the
+     * checksum and the ingest tap on the way. {@code written} stays accurate when the
+     * body fails midway.
+     */
+    private static final class ChunkCopy {
+
+        private final FileChannel channel;
+        private final long offset;
+        private final long limit;
+        private final ChunkChecksum checksum;
+        private final VideoIngestService.ChunkTap tap;
+        private final byte[] buffer;
+        private long written;
+
+        private ChunkCopy(FileChannel channel, long offset, long limit, ChunkChecksum checksum,
+                          VideoIngestService.ChunkTap tap, int bufferSize) {
+            this.channel = channel;
+            this.offset = offset;
+            this.limit = limit;
+            this.checksum = checksum;
+            this.tap = tap;
+            this.buffer = new byte[bufferSize];
+        }
+
+        void from(InputStream body) throws IOException {
+            int read;
+            while (written < limit
+                    && (read = body.read(buffer, 0, (int) Math.min(buffer.length, limit - written))) != -1) {
+                if (checksum != null) {
+                    checksum.digest().update(buffer, 0, read);
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk, offset + written + chunk.position());
+                }
+                tap.update(buffer, 0, read);
+                written += read;
+            }
+            if (written == limit && body.read() != -1) {
+                throw UploadException.invalid("Chunk runs past the upload length or the maximum chunk size");
+            }
+        }
+    }
+
+    private record ChunkChecksum(MessageDigest digest, byte[] expected) {
+
+        // tus algorithm names mapped to JCA names
+        static ChunkChecksum parse(String header) {
+            if (!StringUtils.hasText(header)) {
+                return null;
+            }
+            String[] parts = header.trim().split(" ", 2);
+            String algorithm = switch (parts[0].toLowerCase(Locale.ROOT)) {
+                case "sha256" -> "SHA-256";
+                case "sha1" -> "SHA-1";
+                case "md5" -> "MD5";
+                default -> throw UploadException.invalid("Unsupported checksum algorithm: " + parts[0]);
+            };
+            if (parts.length < 2) {
+                throw UploadException.invalid("Upload-Checksum needs an algorithm and a digest");
+            }
+            try {
+                return new ChunkChecksum(MessageDigest.getInstance(algorithm), Base64.getDecoder().decode(parts[1].trim()));
+            } catch (IllegalArgumentException e) {
+                throw UploadException.invalid("Upload-Checksum digest is not valid base64");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(algorithm + " not available", e);
+            }
+        }
+
+        boolean matches() {
+            return MessageDigest.isEqual(digest.digest(), expected);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.api.exception.VideoNotFoundException;
+import com.hapidzfadli.hflix.config.ViewCounterProperties;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-video view counts. A view increments a {@link LongAdder}, whose cells spread
+ * concurrent plays of the same video, and the counts gathered since the last flush are
+ * added to {@code videos.view_count} as one JDBC batch of deltas, so the hot row of a
+ * popular video is updated once per flush instead of once per play. Views also feed the
+ * {@link TrendingService}. Counters of idle videos are kept, removing one could drop a
+ * view racing with the removal, so there is one for every video viewed since startup.
+ */
+@Slf4j
+@Component
+public class ViewCounter {
+
+    private static final String UPDATE_SQL = "UPDATE videos SET view_count = view_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VideoRepository videoRepository;
+    private final TrendingService trendingService;
+    private final int batchSize;
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    public ViewCounter(ViewCounterProperties properties, JdbcTemplate jdbcTemplate, VideoRepository videoRepository,
+                       TrendingService trendingService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.videoRepository = videoRepository;
+        this.trendingService = trendingService;
+        this.batchSize = properties.getBatchSize();
+    }
+
+    public void record(Long videoId) {
+        add(videoId, 1);
+        trendingService.record(videoId);
+    }
+
+    /**
+     * The stored count plus the views not flushed yet. Views being written by a running
+     * flush are briefly missing.
+     */
+    public long views(Long videoId) {
+        long stored = videoRepository.findViewCount(videoId)
+                .orElseThrow(() -> VideoNotFoundException.withId(videoId));
+        LongAdder unflushed = pending.get(videoId);
+        return stored + (unflushed != null ? unflushed.sum() : 0);
+    }
+
+    @Scheduled(fixedDelayString = "${app.views.flush-interval-ms:10000}")
+    public void flush() {
+        List<Map.Entry<Long, Long>> batch = new ArrayList<>();
+        pending.forEach((videoId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                batch.add(Map.entry(videoId, delta));
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batchSize, (ps, entry) -> {
+                ps.setLong(1, entry.getValue());
+                ps.setLong(2, entry.getKey());
+            });
+            log.debug("Flushed view counts of {} videos", batch.size());
+        } catch (RuntimeException e) {
+            log.error("Failed to flush view counts of {} videos, will retry: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> add(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void add(Long videoId, long views) {
+        LongAdder adder = pending.get(videoId);
+        if (adder == null) {
+            adder = pending.computeIfAbsent(videoId, id -> new LongAdder());
+        }
+        adder.add(views);
+    }
+}
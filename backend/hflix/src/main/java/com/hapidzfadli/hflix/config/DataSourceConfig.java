@@ -0,0 +1,30 @@
+package com.hapidzfadli.hflix.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * On virtual threads, puts the connection pool behind a {@link BoundedDataSource} sized
+ * to the pool, see {@link ExecutionMode}.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class DataSourceConfig {
+
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource pool) {
+                    return new BoundedDataSource(pool, pool.getMaximumPoolSize(), pool.getConnectionTimeout());
+                }
+                return bean;
+            }
+        };
+    }
+}
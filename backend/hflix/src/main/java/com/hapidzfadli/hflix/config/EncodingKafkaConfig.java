@@ -0,0 +1,46 @@
+package com.hapidzfadli.hflix.config;
+
+import com.hapidzfadli.hflix.app.service.impl.EncodingWorker;
+import com.hapidzfadli.hflix.model.EncodingJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "video.encoding.queue", havingValue = "kafka", matchIfMissing = true)
+public class EncodingKafkaConfig {
+
+    /**
+     * One job per poll and one consumer thread per worker slot. The poll interval has to
+     * cover a whole job because the offset is committed only after it.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, EncodingJob> encodingListenerContainerFactory(
+            KafkaProperties kafkaProperties, EncodingProperties encodingProperties, EncodingWorker worker,
+            MeterRegistry meterRegistry) {
+        Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1);
+        config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, (int) encodingProperties.getJobTimeout().toMillis());
+        config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, EncodingJob.class.getName());
+
+        ConcurrentKafkaListenerContainerFactory<String, EncodingJob> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        DefaultKafkaConsumerFactory<String, EncodingJob> consumerFactory = new DefaultKafkaConsumerFactory<>(config);
+        // client metrics, the consumer lag is the depth of the encoding queue
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(worker.getSlots());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        return factory;
+    }
+}
@@ -0,0 +1,38 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "video.encoding")
+@Data
+public class EncodingProperties {
+    private List<String> resolutions = List.of("240p", "360p", "480p", "720p", "1080p", "4K");
+    private List<String> formats = List.of("mp4");
+    private List<String> codecs = List.of("H.264");
+    // kafka or in-process
+    private String queue = "kafka";
+    // kafka queue: uploaded videos still waiting after this long are queued again
+    private Duration requeueAfter = Duration.ofMinutes(15);
+    // concurrent jobs per node, 0 derives it from cores and memory
+    private int workers = 0;
+    private int threadsPerJob = 2;
+    private DataSize memoryPerJob = DataSize.ofMegabytes(768);
+    private String workDir = "./storage/work";
+    // HLS segment length, every rendition gets a keyframe on each boundary
+    private int segmentSeconds = 4;
+    private String preset = "veryfast";
+    private long audioBitrate = 128_000;
+    // sources at least this long are split at keyframes and the chunks encoded in parallel
+    private Duration chunkingThreshold = Duration.ofMinutes(10);
+    private Duration chunkLength = Duration.ofSeconds(60);
+    private int maxAttempts = 3;
+    private Duration retryBackoff = Duration.ofSeconds(5);
+    // upper bound for one job, also the Kafka max poll interval
+    private Duration jobTimeout = Duration.ofHours(2);
+}
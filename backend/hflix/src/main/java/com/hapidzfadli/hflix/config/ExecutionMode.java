@@ -0,0 +1,60 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where blocking work runs. With {@code spring.threads.virtual.enabled} Spring Boot puts
+ * Tomcat's request handling, scheduled tasks and Kafka listeners on virtual threads, and
+ * the executors created here for storage I/O and background jobs follow. A thread count
+ * then bounds nothing, so callers that must limit concurrency (origin fetches, parallel
+ * downloads, ffmpeg processes) hold a {@link java.util.concurrent.Semaphore} permit
+ * instead, in both modes.
+ * <p>
+ * Locks on hot paths are {@link java.util.concurrent.locks.ReentrantLock}s, not monitors.
+ * The exception is Tomcat's own blocking socket write, see {@code HflixApplication}.
+ */
+@Slf4j
+@Component
+public class ExecutionMode {
+
+    private final boolean virtual;
+
+    public ExecutionMode(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+        log.info("Blocking work runs on {} threads", virtual ? "virtual" : "platform");
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public ThreadFactory threadFactory(String prefix) {
+        return virtual ? Thread.ofVirtual().name(prefix, 1).factory() : new CustomizableThreadFactory(prefix);
+    }
+
+    /**
+     * An executor for blocking tasks: a thread per task in virtual mode, otherwise up to
+     * {@code platformThreads} pooled threads that time out when idle, with an unbounded
+     * queue.
+     */
+    public ExecutorService blockingExecutor(String prefix, int platformThreads) {
+        if (virtual) {
+            return Executors.newThreadPerTaskExecutor(threadFactory(prefix));
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(platformThreads, platformThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory(prefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,15 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.export")
+@Data
+public class ExportProperties {
+    // rows fetched per round trip from the server-side cursor
+    private int fetchSize = 1000;
+    // characters buffered before they are written to the response
+    private int bufferSize = 4096;
+}
@@ -0,0 +1,23 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ffmpeg")
+@Data
+public class FfmpegProperties {
+    private Binary binary = new Binary();
+    private Probe probe = new Probe();
+
+    @Data
+    public static class Binary {
+        private String path = "/usr/bin/ffmpeg";
+    }
+
+    @Data
+    public static class Probe {
+        private String path = "/usr/bin/ffprobe";
+    }
+}
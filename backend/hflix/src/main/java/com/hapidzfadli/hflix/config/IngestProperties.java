@@ -0,0 +1,17 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.ingest")
+@Data
+public class IngestProperties {
+    // leading bytes handed to Tika, enough for every container signature we accept
+    private int sniffBytes = 8192;
+    // detected types accepted besides video/*
+    private List<String> extraAllowedTypes = List.of("application/mp4", "application/x-matroska", "application/mxf");
+}
@@ -1,11 +1,13 @@
 package com.hapidzfadli.hflix.config;
 
+import com.hapidzfadli.hflix.api.exception.SampledErrorLogger;
 import com.hapidzfadli.hflix.app.service.impl.JwtTokenProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,15 +16,28 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final SampledErrorLogger sampledLog = new SampledErrorLogger(log, 20, 60_000);
+
     private final JwtTokenProvider tokenProvider;
     private final JwtProperties jwtProperties;
+    private final Timer acceptedTimer;
+    private final Timer rejectedTimer;
+
+    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider, JwtProperties jwtProperties,
+                                   MeterRegistry meterRegistry) {
+        this.tokenProvider = tokenProvider;
+        this.jwtProperties = jwtProperties;
+        this.acceptedTimer = verificationTimer(meterRegistry, "accepted");
+        this.rejectedTimer = verificationTimer(meterRegistry, "rejected");
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -30,8 +45,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if(StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)){
-                Optional<Authentication> authentication = tokenProvider.getAuthentication(jwt);
+            if(StringUtils.hasText(jwt)){
+                long started = System.nanoTime();
+                Optional<Authentication> authentication = tokenProvider.authenticate(jwt);
+                Timer timer = authentication.isPresent() ? acceptedTimer : rejectedTimer;
+                timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
 
                 authentication.ifPresent(auth -> {
                     SecurityContextHolder.getContext().setAuthentication(auth);
@@ -40,12 +58,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 });
             }
         } catch (Exception e) {
-            log.error("Cannot set user authentication: {}", e.getMessage());
+            sampledLog.error(e.getClass().getSimpleName(), "Cannot set user authentication: {}", e.getMessage());
         }
 
         filterChain.doFilter(request, response);
     }
 
+    // verified tokens are cached, the histogram shows hits and signature checks apart
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("auth.jwt.verification")
+                .description("Time to verify a bearer token and build its authentication")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(meterRegistry);
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader(jwtProperties.getHeaderName());
 
@@ -13,4 +13,5 @@ public class JwtProperties {
     private String tokenPrefix;
     private String headerName;
     private String issuer;
+    private int verifiedCacheSize = 10000;
 }
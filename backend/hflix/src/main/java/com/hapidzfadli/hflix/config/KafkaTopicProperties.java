@@ -0,0 +1,13 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "kafka.topic")
+@Data
+public class KafkaTopicProperties {
+    private String encodingQueue = "video-encoding-queue";
+    private String encodingStatus = "video-encoding-status";
+}
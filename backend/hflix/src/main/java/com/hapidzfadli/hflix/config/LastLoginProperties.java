@@ -0,0 +1,13 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.last-login")
+@Data
+public class LastLoginProperties {
+    // users per JDBC batch when the last-login timestamps are flushed
+    private int batchSize = 500;
+}
@@ -0,0 +1,198 @@
+package com.hapidzfadli.hflix.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.api.exception.ErrorResponseWriter;
+import com.hapidzfadli.hflix.api.exception.SampledErrorLogger;
+import com.hapidzfadli.hflix.app.service.impl.TokenBucketLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits login and registration per client address and per username with token
+ * buckets, answering 429 with Retry-After before the request reaches a controller, so a
+ * throttled attempt costs no database lookup and no password hash. The body is read here
+ * to find the username and handed on buffered.
+ * <p>
+ * The client address is the connection's, configure {@code server.forward-headers-strategy}
+ * when running behind a proxy.
+ */
+@Slf4j
+@Component
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+    private static final SampledErrorLogger sampledLog = new SampledErrorLogger(log, 20, 60_000);
+    private static final Set<String> THROTTLED_PATHS = Set.of("/api/auth/login", "/api/auth/register");
+    private static final String THROTTLED_MESSAGE = "Too many attempts, please retry later";
+
+    private final boolean enabled;
+    private final int maxBodyBytes;
+    private final TokenBucketLimiter byAddress;
+    private final TokenBucketLimiter byUsername;
+    private final ObjectMapper objectMapper;
+    private final ErrorResponseWriter errorResponseWriter;
+    private final Counter addressThrottled;
+    private final Counter usernameThrottled;
+
+    public LoginThrottleFilter(LoginThrottleProperties properties, ObjectMapper objectMapper,
+                               ErrorResponseWriter errorResponseWriter, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.maxBodyBytes = properties.getMaxBodyBytes();
+        this.byAddress = new TokenBucketLimiter(properties.getIpBurst(), properties.getIpInterval(),
+                properties.getMaxKeys());
+        this.byUsername = new TokenBucketLimiter(properties.getUsernameBurst(), properties.getUsernameInterval(),
+                properties.getMaxKeys());
+        this.objectMapper = objectMapper;
+        this.errorResponseWriter = errorResponseWriter;
+        this.addressThrottled = throttledCounter(meterRegistry, "ip");
+        this.usernameThrottled = throttledCounter(meterRegistry, "username");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled
+                || !HttpMethod.POST.matches(request.getMethod())
+                || !THROTTLED_PATHS.contains(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String address = request.getRemoteAddr();
+        long wait = byAddress.tryAcquire(address);
+        if (wait > 0) {
+            addressThrottled.increment();
+            sampledLog.warn("LoginThrottled", "Throttled auth attempts from {}", address);
+            reject(response, wait);
+            return;
+        }
+
+        byte[] body = request.getInputStream().readNBytes(maxBodyBytes + 1);
+        if (body.length > maxBodyBytes) {
+            errorResponseWriter.write(response, HttpStatus.PAYLOAD_TOO_LARGE.value(), "Request body too large");
+            return;
+        }
+        String username = username(body);
+        if (username != null) {
+            wait = byUsername.tryAcquire(username);
+            if (wait > 0) {
+                usernameThrottled.increment();
+                sampledLog.warn("LoginThrottled", "Throttled auth attempts for user {}", username);
+                reject(response, wait);
+                return;
+            }
+        }
+
+        filterChain.doFilter(new BufferedBodyRequest(request, body), response);
+    }
+
+    private void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1))));
+        errorResponseWriter.write(response, HttpStatus.TOO_MANY_REQUESTS.value(), THROTTLED_MESSAGE);
+    }
+
+    // malformed bodies go through unthrottled by username, the controller rejects them
+    private String username(byte[] body) {
+        try {
+            JsonNode username = objectMapper.readTree(body).get("username");
+            if (username != null && username.isTextual() && !username.textValue().isBlank()) {
+                return username.textValue().trim().toLowerCase(Locale.ROOT);
+            }
+        } catch (IOException e) {
+            log.debug("Could not read the username of an auth request: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private static Counter throttledCounter(MeterRegistry meterRegistry, String limit) {
+        return Counter.builder("auth.throttled")
+                .description("Login and registration attempts rejected by rate limiting")
+                .tag("limit", limit)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The request with its body already read, replayed to the controller.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Body is buffered");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
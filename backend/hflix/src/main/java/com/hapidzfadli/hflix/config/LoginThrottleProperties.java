@@ -0,0 +1,24 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.login-throttle")
+@Data
+public class LoginThrottleProperties {
+    private boolean enabled = true;
+    // attempts per client address: a burst of ip-burst, then one per ip-interval
+    private int ipBurst = 20;
+    private Duration ipInterval = Duration.ofSeconds(3);
+    // attempts per username, whichever address they come from
+    private int usernameBurst = 5;
+    private Duration usernameInterval = Duration.ofSeconds(12);
+    // keys tracked per limit, idle keys expire once their bucket would be full again
+    private long maxKeys = 500_000;
+    // login and register bodies are small, larger ones are rejected unread
+    private int maxBodyBytes = 16 * 1024;
+}
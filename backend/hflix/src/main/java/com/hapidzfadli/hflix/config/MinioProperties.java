@@ -0,0 +1,24 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "minio")
+@Data
+public class MinioProperties {
+    private String endpoint;
+    private String accessKey;
+    private String secretKey;
+    private String bucketName = "videos";
+    private boolean secure;
+    private Videos videos = new Videos();
+
+    @Data
+    public static class Videos {
+        private String originalPath = "original";
+        private String encodedPath = "encoded";
+        private String thumbnailPath = "thumbnails";
+    }
+}
@@ -0,0 +1,30 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "video.packaging")
+@Data
+public class PackagingProperties {
+    // segment indexes kept in memory, one per video
+    private int indexCacheSize = 10000;
+    // memory for generated manifests, keyed by video, file and selected tracks
+    private DataSize manifestCacheMemory = DataSize.ofMegabytes(64);
+    // a re-encode on another node is picked up after this long
+    private Duration indexTtl = Duration.ofMinutes(10);
+    // named ladder caps clients select with ?profile=
+    private Map<String, Profile> profiles = new HashMap<>();
+
+    @Data
+    public static class Profile {
+        private Integer maxHeight;
+        private Long maxBandwidth;
+    }
+}
@@ -0,0 +1,24 @@
+package com.hapidzfadli.hflix.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Kept apart from SecurityConfig so services that hash passwords do not depend on the
+ * security filter chain configuration.
+ */
+@Configuration
+public class PasswordEncoderConfig {
+
+    @Bean
+    public PasswordEncoder passwordEncoder(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        return new PooledPasswordEncoder(
+                new BCryptPasswordEncoder(properties.getStrength()),
+                properties,
+                meterRegistry
+        );
+    }
+}
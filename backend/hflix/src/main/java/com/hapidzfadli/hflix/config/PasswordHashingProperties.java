@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.password-hashing")
+@Data
+public class PasswordHashingProperties {
+    private int strength = 12;
+    // 0 means one thread per available core
+    private int threads = 0;
+    private int queueCapacity = 64;
+    private long retryAfterSeconds = 2;
+}
@@ -0,0 +1,18 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.playback")
+@Data
+public class PlaybackProperties {
+    // independent maps of buffered positions, each flushed as its own batch
+    private int shards = 16;
+    private int batchSize = 500;
+    // positions waiting for a flush, heartbeats for new videos are dropped above it
+    private int maxPending = 500_000;
+    // continue-watching list length
+    private int maxListSize = 50;
+}
@@ -0,0 +1,31 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "video.segment-cache")
+@Data
+public class SegmentCacheProperties {
+    // only objects on remote storage are cached, local files are already served from disk
+    private boolean enabled = true;
+    // off-heap tier, keep -XX:MaxDirectMemorySize above this
+    private DataSize memorySize = DataSize.ofMegabytes(256);
+    private DataSize diskSize = DataSize.ofGigabytes(10);
+    private String diskDir = "./storage/segment-cache";
+    // larger objects (progressive downloads) are proxied instead of cached
+    private DataSize maxObjectSize = DataSize.ofMegabytes(16);
+    // cached objects are checked against the origin's etag after this long
+    private Duration revalidateAfter = Duration.ofMinutes(10);
+    // concurrent origin lookups, each key has at most one in flight; threads in platform mode, permits in both
+    private int fetchThreads = 32;
+    private int fetchAttempts = 3;
+    // doubled after every failed attempt
+    private Duration fetchBackoff = Duration.ofMillis(200);
+    // longest a request waits for the lookup or for the next bytes of a fetch
+    private Duration fetchTimeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,19 @@
+package com.hapidzfadli.hflix.config;
+
+import io.minio.MinioAsyncClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.type", havingValue = "minio", matchIfMissing = true)
+    public MinioAsyncClient minioAsyncClient(MinioProperties properties) {
+        return MinioAsyncClient.builder()
+                .endpoint(properties.getEndpoint())
+                .credentials(properties.getAccessKey(), properties.getSecretKey())
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "storage")
+@Data
+public class StorageProperties {
+    // minio (any S3-compatible endpoint) or local
+    private String type = "minio";
+    // base directory of the local backend, keys map to relative paths below it
+    private String localRoot = "./storage";
+    // objects larger than one part move as parallel multipart transfers (S3 minimum is 5MB)
+    private long partSize = 16 * 1024 * 1024;
+    // parts in flight across all transfers, also the number of pooled part buffers
+    private int concurrency = 4;
+}
@@ -0,0 +1,27 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "video.thumbnails")
+@Data
+public class ThumbnailProperties {
+    private boolean enabled = true;
+    // one scrubbing preview per interval of the timeline
+    private Duration interval = Duration.ofSeconds(10);
+    // preview width, the height follows the aspect ratio
+    private int width = 160;
+    // previews per sprite sheet, a sheet covers columns * rows * interval of the timeline
+    private int columns = 10;
+    private int rows = 10;
+    // poster frame position as a fraction of the duration
+    private double posterPosition = 0.1;
+    // JPEG quality, 2 (best) to 31
+    private int quality = 5;
+    // process priority of the thumbnail ffmpeg, encodes run at 0
+    private int niceness = 10;
+}
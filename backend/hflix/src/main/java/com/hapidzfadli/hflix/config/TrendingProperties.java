@@ -0,0 +1,22 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.trending")
+@Data
+public class TrendingProperties {
+    // views older than the window no longer count, it slides by window / buckets
+    private Duration window = Duration.ofHours(1);
+    private int buckets = 12;
+    // videos on the trending list
+    private int size = 20;
+    // count-min sketch rows and counters per row (rounded up to a power of two),
+    // estimates overcount by at most e / width of the views in the window
+    private int sketchDepth = 4;
+    private int sketchWidth = 8192;
+}
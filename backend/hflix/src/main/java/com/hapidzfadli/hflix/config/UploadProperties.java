@@ -0,0 +1,22 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.upload")
+@Data
+public class UploadProperties {
+    // preallocated staging files live here until the upload is finalized
+    private String stagingDir = "./storage/uploads";
+    private long maxFileSize = 3L * 1024 * 1024 * 1024;
+    // largest body a single PATCH may carry
+    private long maxChunkSize = 64L * 1024 * 1024;
+    // copy buffer between the request body and the staging file
+    private int bufferSize = 64 * 1024;
+    // unfinished uploads are dropped after this long without finalize
+    private Duration expiry = Duration.ofHours(24);
+}
@@ -0,0 +1,16 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.user-cache")
+@Data
+public class UserCacheProperties {
+    private boolean enabled = true;
+    private long maxSize = 10000;
+    private Duration ttl = Duration.ofMinutes(5);
+}
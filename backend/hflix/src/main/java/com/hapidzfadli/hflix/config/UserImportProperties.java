@@ -0,0 +1,14 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.user-import")
+@Data
+public class UserImportProperties {
+    private int chunkSize = 500;
+    // 0 means half of the available cores, leaving room for interactive logins
+    private int hashThreads = 0;
+}
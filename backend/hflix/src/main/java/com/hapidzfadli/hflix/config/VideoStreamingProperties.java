@@ -0,0 +1,23 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "video.streaming")
+@Data
+public class VideoStreamingProperties {
+    // upper bound for an open-ended range (bytes=N-), so a seek costs one bounded read
+    private long chunkSize = 1024 * 1024;
+    // servlet response buffer, only headers and multipart boundaries go through it
+    private int bufferSize = 4096;
+    // requests asking for more ranges than this (after merging) get a 416
+    private int maxRanges = 16;
+    // renditions never change once written, the ETag still guards against re-encodes
+    private Duration cacheMaxAge = Duration.ofDays(1);
+    // number of content hashes kept in memory for ETag generation
+    private int etagCacheSize = 10000;
+}
@@ -0,0 +1,13 @@
+package com.hapidzfadli.hflix.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.views")
+@Data
+public class ViewCounterProperties {
+    // videos per JDBC batch when the view deltas are flushed
+    private int batchSize = 500;
+}
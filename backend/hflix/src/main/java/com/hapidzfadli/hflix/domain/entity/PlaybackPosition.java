@@ -0,0 +1,48 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Where a user stopped watching a video. Rows are written in batches by
+ * {@code PlaybackPositionBuffer}, never through the repository.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(PlaybackPosition.Key.class)
+@Table(name = "playback_positions", indexes = {
+        @Index(name = "idx_playback_positions_user_updated_at", columnList = "user_id, updated_at")
+})
+public class PlaybackPosition {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "video_id")
+    private Long videoId;
+
+    @Column(name = "position_ms", nullable = false)
+    private long positionMs;
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long videoId;
+    }
+}
@@ -13,7 +13,11 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        // seek keys for cursor pagination, (sort key, id)
+        @Index(name = "idx_users_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_users_status_id", columnList = "status, id")
+})
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
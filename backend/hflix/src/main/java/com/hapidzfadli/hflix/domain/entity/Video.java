@@ -0,0 +1,98 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Data
+@Table(name = "videos", indexes = {
+        @Index(name = "idx_videos_owner_id", columnList = "owner_id, id"),
+        @Index(name = "idx_videos_content_sha256", columnList = "content_sha256")
+})
+public class Video {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(nullable = false, length = 200)
+    private String title;
+
+    @Column(name = "original_file_name", length = 255)
+    private String originalFileName;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    // storage key of the uploaded source, see StorageLayout
+    @Column(name = "original_key", length = 512)
+    private String originalKey;
+
+    // hex SHA-256 of the original, identical uploads share one stored copy
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
+    // set on duplicates, originals and renditions are read from this video's keys
+    @Column(name = "source_video_id")
+    private Long sourceVideoId;
+
+    @Column(name = "duration_seconds")
+    private Double durationSeconds;
+
+    private Integer width;
+
+    private Integer height;
+
+    @Column(name = "video_codec", length = 32)
+    private String videoCodec;
+
+    @Column(name = "audio_codec", length = 32)
+    private String audioCodec;
+
+    @Column(name = "bit_rate")
+    private Long bitRate;
+
+    // path segment of the current thumbnail set, a new encode writes a new one
+    @Column(name = "thumbnail_version", length = 16)
+    private String thumbnailVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private Status status = Status.UPLOADING;
+
+    // only ever incremented in SQL by ViewCounter, saving the entity never writes it back
+    @ColumnDefault("0")
+    @Column(name = "view_count", nullable = false, insertable = false, updatable = false)
+    private long viewCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // the video whose storage keys hold this video's files
+    public Long getStorageVideoId() {
+        return sourceVideoId != null ? sourceVideoId : id;
+    }
+
+    public enum Status {
+        UPLOADING,
+        UPLOADED,
+        PROCESSING,
+        READY,
+        FAILED
+    }
+}
@@ -0,0 +1,58 @@
+package com.hapidzfadli.hflix.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload session. Chunks are written into a preallocated staging file at
+ * their offset, the offset column only advances once a chunk is on disk.
+ */
+@Entity
+@Data
+@Table(name = "video_uploads", indexes = {
+        @Index(name = "idx_video_uploads_status_expires_at", columnList = "status, expires_at")
+})
+public class VideoUpload {
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "video_id", nullable = false)
+    private Long videoId;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(name = "upload_length", nullable = false)
+    private long uploadLength;
+
+    @Column(name = "upload_offset", nullable = false)
+    private long uploadOffset;
+
+    @Column(name = "staging_path", nullable = false, length = 512)
+    private String stagingPath;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private Status status = Status.IN_PROGRESS;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+}
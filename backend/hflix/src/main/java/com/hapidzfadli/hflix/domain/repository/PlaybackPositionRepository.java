@@ -0,0 +1,14 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.PlaybackPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PlaybackPositionRepository extends JpaRepository<PlaybackPosition, PlaybackPosition.Key> {
+
+    List<PlaybackPosition> findByUserIdOrderByUpdatedAtDesc(Long userId, Pageable pageable);
+}
@@ -4,14 +4,19 @@ import com.hapidzfadli.hflix.domain.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
 
     Optional<User> findByUsername(String username);
 
@@ -28,6 +33,30 @@ public interface UserRepository extends JpaRepository<User, Long> {
             "LOWER(u.fullName) LIKE LOWER(CONCAT('%', :keyword, '%')))")
     Page<User> findAllWithSearch(@Param("keyword") String keyword, Pageable pageable);
 
+    // Stores an already encoded password, used when upgrading outdated hashes on login
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
+    // Duplicate check for bulk import, one round trip for a whole chunk
+    @Query("SELECT u.username, u.email FROM User u WHERE u.username IN :usernames OR u.email IN :emails")
+    List<Object[]> findExistingUsernamesAndEmails(@Param("usernames") Collection<String> usernames,
+                                                  @Param("emails") Collection<String> emails);
+
+    @Modifying
+    @Query("UPDATE User u SET u.status = :status, u.updatedAt = :updatedAt WHERE u.id IN :ids")
+    int updateStatusByIds(@Param("ids") Collection<Long> ids, @Param("status") User.Status status,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("DELETE FROM User u WHERE u.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
     // Query to find users by status
     Page<User> findByStatus(User.Status status, Pageable pageable);
+
+    // Row estimate from table statistics (MySQL), avoids a full COUNT(*) on large tables
+    @Query(value = "SELECT TABLE_ROWS FROM information_schema.TABLES " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'users'", nativeQuery = true)
+    Long estimateRowCount();
 }
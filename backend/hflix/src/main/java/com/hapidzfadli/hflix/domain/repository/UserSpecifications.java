@@ -0,0 +1,39 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.User;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+/**
+ * Filters for the user listing, combinable with each other and with keyset scrolling.
+ */
+public final class UserSpecifications {
+
+    private UserSpecifications() {
+    }
+
+    public static Specification<User> search(String keyword, User.Status status) {
+        return Specification.where(keywordMatches(keyword)).and(hasStatus(status));
+    }
+
+    // Same matching rules as UserRepository.findAllWithSearch
+    public static Specification<User> keywordMatches(String keyword) {
+        if (!StringUtils.hasText(keyword)) {
+            return null;
+        }
+
+        String pattern = "%" + keyword.trim().toLowerCase() + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("username")), pattern),
+                cb.like(cb.lower(root.get("email")), pattern),
+                cb.like(cb.lower(root.get("fullName")), pattern)
+        );
+    }
+
+    public static Specification<User> hasStatus(User.Status status) {
+        if (status == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+}
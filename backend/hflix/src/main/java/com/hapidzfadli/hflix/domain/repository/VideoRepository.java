@@ -0,0 +1,46 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.Video;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface VideoRepository extends JpaRepository<Video, Long> {
+
+    Optional<Video> findFirstByContentSha256AndStatusInOrderByIdAsc(String contentSha256, Collection<Video.Status> statuses);
+
+    @Query("SELECT coalesce(v.sourceVideoId, v.id) FROM Video v WHERE v.id = :id")
+    Optional<Long> findStorageVideoId(@Param("id") Long id);
+
+    @Query("SELECT v.viewCount FROM Video v WHERE v.id = :id")
+    Optional<Long> findViewCount(@Param("id") Long id);
+
+    List<Video> findByStatusInAndSourceVideoIdIsNullOrderByIdAsc(Collection<Video.Status> statuses);
+
+    List<Video> findTop100ByStatusAndSourceVideoIdIsNullAndUpdatedAtBeforeOrderByIdAsc(Video.Status status,
+                                                                                      LocalDateTime before);
+
+    // claims a stale video for one node, the others see the new updated_at and skip it
+    @Modifying
+    @Query("UPDATE Video v SET v.updatedAt = :now WHERE v.id = :id AND v.status = :status AND v.updatedAt < :before")
+    int touchIfStale(@Param("id") Long id, @Param("status") Video.Status status,
+                     @Param("before") LocalDateTime before, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE Video v SET v.status = :status WHERE v.id = :id OR v.sourceVideoId = :id")
+    int updateStatusWithDuplicates(@Param("id") Long id, @Param("status") Video.Status status);
+
+    List<Video> findByStatusAndThumbnailVersionIsNullAndSourceVideoIdIsNullOrderByIdAsc(Video.Status status);
+
+    @Modifying
+    @Query("UPDATE Video v SET v.thumbnailVersion = :version WHERE v.id = :id OR v.sourceVideoId = :id")
+    int updateThumbnailVersionWithDuplicates(@Param("id") Long id, @Param("version") String version);
+}
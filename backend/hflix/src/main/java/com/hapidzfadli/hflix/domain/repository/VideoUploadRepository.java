@@ -0,0 +1,23 @@
+package com.hapidzfadli.hflix.domain.repository;
+
+import com.hapidzfadli.hflix.domain.entity.VideoUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface VideoUploadRepository extends JpaRepository<VideoUpload, String> {
+
+    // Compare-and-set on the offset, a concurrent or replayed chunk updates nothing
+    @Modifying
+    @Query("UPDATE VideoUpload u SET u.uploadOffset = :offset, u.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE u.id = :id AND u.uploadOffset = :expected")
+    int advanceOffset(@Param("id") String id, @Param("expected") long expected, @Param("offset") long offset);
+
+    List<VideoUpload> findTop100ByStatusAndExpiresAtBefore(VideoUpload.Status status, LocalDateTime now);
+}
@@ -0,0 +1,10 @@
+package com.hapidzfadli.hflix.model;
+
+import java.time.Instant;
+
+/**
+ * Message on the encoding queue. Only ids and keys travel, the worker reads everything
+ * else from the database so a redelivered job always sees the current video.
+ */
+public record EncodingJob(Long videoId, String originalKey, Instant submittedAt) {
+}
@@ -0,0 +1,20 @@
+package com.hapidzfadli.hflix.model;
+
+import java.time.Instant;
+
+/**
+ * Message on the encoding status topic, keyed by video id.
+ */
+public record EncodingStatus(Long videoId, State state, double progress, String message, Instant timestamp) {
+
+    public enum State {
+        QUEUED,
+        PROCESSING,
+        READY,
+        FAILED
+    }
+
+    public static EncodingStatus of(Long videoId, State state, double progress, String message) {
+        return new EncodingStatus(videoId, state, progress, message, Instant.now());
+    }
+}
@@ -0,0 +1,56 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountMinSketchTest {
+
+    @Test
+    void estimatesNeverUndercount() {
+        // far more keys than counters, so most of them collide
+        CountMinSketch sketch = new CountMinSketch(2, 16);
+        Map<Long, Long> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextInt(1_000);
+            long count = 1 + random.nextInt(5);
+            sketch.add(key, count);
+            counts.merge(key, count, Long::sum);
+        }
+
+        counts.forEach((key, count) -> assertThat(sketch.estimate(key)).isGreaterThanOrEqualTo(count));
+    }
+
+    @Test
+    void estimatesAreExactWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(4, 8192);
+        sketch.add(1L, 7);
+        sketch.add(2L, 3);
+        sketch.add(1L, 1);
+
+        assertThat(sketch.estimate(1L)).isEqualTo(8);
+        assertThat(sketch.estimate(2L)).isEqualTo(3);
+        assertThat(sketch.estimate(3L)).isZero();
+    }
+
+    @Test
+    void subtractRemovesTheCountsOfAnAddedSketch() {
+        CountMinSketch window = new CountMinSketch(4, 1024);
+        CountMinSketch bucket = new CountMinSketch(4, 1024);
+        window.add(1L, 5);
+        window.add(2L, 2);
+        bucket.add(2L, 2);
+
+        window.subtract(bucket);
+        bucket.clear();
+
+        assertThat(window.estimate(1L)).isEqualTo(5);
+        assertThat(window.estimate(2L)).isZero();
+        assertThat(bucket.estimate(2L)).isZero();
+    }
+}
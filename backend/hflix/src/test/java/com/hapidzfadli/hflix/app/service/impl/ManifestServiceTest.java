@@ -0,0 +1,143 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.app.service.ManifestFilter;
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.StoredObject;
+import com.hapidzfadli.hflix.app.service.VideoFile;
+import com.hapidzfadli.hflix.config.PackagingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ManifestServiceTest {
+
+    private static final SegmentIndex.Track AUDIO = track("audio", SegmentIndex.Type.AUDIO, null, 128_000,
+            4, 4, 4, 2.5);
+    private static final SegmentIndex.Track LOW = track("video_360p", SegmentIndex.Type.VIDEO, 360, 800_000,
+            4, 4, 4, 2.5);
+    private static final SegmentIndex.Track MID = track("video_720p", SegmentIndex.Type.VIDEO, 720, 2_800_000,
+            4, 4, 4, 2.5);
+    private static final SegmentIndex.Track HIGH = track("video_1080p", SegmentIndex.Type.VIDEO, 1080, 5_000_000,
+            4, 4, 4, 2.5);
+    private static final SegmentIndex INDEX = new SegmentIndex(SegmentIndex.VERSION, 14.5,
+            List.of(LOW, MID, HIGH, AUDIO));
+
+    @Test
+    void filterKeepsTheRenditionsUnderItsCaps() {
+        assertThat(ManifestService.videos(INDEX, ManifestFilter.NONE)).containsExactly(LOW, MID, HIGH);
+        assertThat(ManifestService.videos(INDEX, new ManifestFilter(720, null))).containsExactly(LOW, MID);
+        assertThat(ManifestService.videos(INDEX, new ManifestFilter(null, 1_000_000L))).containsExactly(LOW);
+    }
+
+    @Test
+    void filterAllowingNoRenditionFallsBackToTheLowest() {
+        assertThat(ManifestService.videos(INDEX, new ManifestFilter(240, null))).containsExactly(LOW);
+        assertThat(ManifestService.videos(INDEX, new ManifestFilter(null, 1L))).containsExactly(LOW);
+    }
+
+    @Test
+    void indexWithoutVideoHasNoLadder() {
+        SegmentIndex audioOnly = new SegmentIndex(SegmentIndex.VERSION, 14.5, List.of(AUDIO));
+
+        assertThat(ManifestService.videos(audioOnly, new ManifestFilter(240, null))).isEmpty();
+    }
+
+    @Test
+    void timelineCollapsesRunsOfEqualDurations() {
+        String mpd = ManifestService.dashManifest(INDEX, List.of(LOW));
+
+        assertThat(timeline(mpd, LOW)).containsExactly(
+                "<S t=\"0\" d=\"4000\" r=\"2\"/>",
+                "<S t=\"12000\" d=\"2500\"/>");
+    }
+
+    @Test
+    void timelineDurationsFollowRoundedStartsWithoutDrift() {
+        SegmentIndex.Track thirds = track("video_360p", SegmentIndex.Type.VIDEO, 360, 800_000,
+                10.0 / 3, 10.0 / 3, 10.0 / 3);
+        SegmentIndex index = new SegmentIndex(SegmentIndex.VERSION, 10, List.of(thirds));
+
+        assertThat(timeline(ManifestService.dashManifest(index, List.of(thirds)), thirds)).containsExactly(
+                "<S t=\"0\" d=\"3333\"/>",
+                "<S t=\"3333\" d=\"3334\"/>",
+                "<S t=\"6667\" d=\"3333\"/>");
+    }
+
+    @Test
+    void masterPlaylistListsTheLadderWithAudio() {
+        String master = ManifestService.masterPlaylist(INDEX, List.of(LOW, MID));
+
+        assertThat(master)
+                .contains("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",NAME=\"audio\"")
+                .contains("#EXT-X-STREAM-INF:BANDWIDTH=928000,AVERAGE-BANDWIDTH=928000,RESOLUTION=640x360,"
+                        + "CODECS=\"avc1.64001f,mp4a.40.2\",AUDIO=\"audio\"\nvideo_360p.m3u8\n")
+                .contains("video_720p.m3u8")
+                .doesNotContain("video_1080p.m3u8");
+    }
+
+    @Test
+    void filtersSelectingTheSameTracksShareOneManifest() throws IOException {
+        StorageService storageService = mock(StorageService.class);
+        StorageLayout storageLayout = mock(StorageLayout.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] json = objectMapper.writeValueAsBytes(INDEX);
+        when(storageLayout.encoded(eq(7L), anyString())).thenAnswer(call -> "encoded/7/" + call.getArgument(1));
+        when(storageService.stat("encoded/7/" + SegmentIndex.FILE_NAME)).thenReturn(Optional.of(
+                new StoredObject("encoded/7/" + SegmentIndex.FILE_NAME, json.length, Instant.EPOCH, "v1", null)));
+        when(storageService.open(eq("encoded/7/" + SegmentIndex.FILE_NAME), anyLong(), anyLong()))
+                .thenAnswer(call -> new ByteArrayInputStream(json));
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ManifestService service = new ManifestService(storageService, storageLayout, objectMapper,
+                new PackagingProperties(), meterRegistry);
+
+        VideoFile capped = service.manifest(1L, 7L, ManifestService.MASTER_PLAYLIST,
+                new ManifestFilter(800, null)).orElseThrow();
+        VideoFile tighter = service.manifest(1L, 7L, ManifestService.MASTER_PLAYLIST,
+                new ManifestFilter(720, 3_000_000L)).orElseThrow();
+        VideoFile uncapped = service.manifest(1L, 7L, ManifestService.MASTER_PLAYLIST,
+                ManifestFilter.NONE).orElseThrow();
+
+        assertThat(tighter.etag()).isEqualTo(capped.etag());
+        assertThat(uncapped.etag()).isNotEqualTo(capped.etag());
+        assertThat(meterRegistry.get("cache.size").tag("cache", "manifests").gauge().value()).isEqualTo(2);
+    }
+
+    private static List<String> timeline(String mpd, SegmentIndex.Track track) {
+        String representation = mpd.substring(mpd.indexOf("<Representation id=\"" + track.name() + "\""));
+        return representation.substring(0, representation.indexOf("</SegmentTimeline>")).lines()
+                .map(String::strip)
+                .filter(line -> line.startsWith("<S "))
+                .toList();
+    }
+
+    private static SegmentIndex.Track track(String name, SegmentIndex.Type type, Integer height, long bandwidth,
+                                            double... durations) {
+        boolean video = type == SegmentIndex.Type.VIDEO;
+        long offset = 1000;
+        List<SegmentIndex.Segment> segments = new ArrayList<>();
+        for (double duration : durations) {
+            long length = (long) (bandwidth * duration / 8);
+            segments.add(new SegmentIndex.Segment(duration, offset, length));
+            offset += length;
+        }
+        return new SegmentIndex.Track(name, type, name + ".mp4", video ? "avc1.64001f" : "mp4a.40.2",
+                video ? height * 16 / 9 : null, height, video ? null : 2, video ? null : 48_000,
+                bandwidth, bandwidth, new SegmentIndex.ByteRange(0, 1000), List.copyOf(segments));
+    }
+}
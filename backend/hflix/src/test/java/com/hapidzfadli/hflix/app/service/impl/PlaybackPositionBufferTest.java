@@ -0,0 +1,141 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.config.PlaybackProperties;
+import com.hapidzfadli.hflix.domain.entity.PlaybackPosition;
+import com.hapidzfadli.hflix.domain.repository.PlaybackPositionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PlaybackPositionBufferTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlaybackPositionRepository repository = mock(PlaybackPositionRepository.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PlaybackProperties properties = new PlaybackProperties();
+    // one list per batch the buffer wrote
+    private final List<List<PlaybackPosition>> written = new ArrayList<>();
+    private final PlaybackPositionBuffer buffer;
+
+    PlaybackPositionBufferTest() {
+        properties.setShards(4);
+        properties.setMaxPending(3);
+        when(repository.findById(any())).thenReturn(Optional.empty());
+        writesSucceed();
+        buffer = new PlaybackPositionBuffer(properties, jdbcTemplate, repository, meterRegistry);
+    }
+
+    @Test
+    void readsTheBufferedPositionBeforeTheDatabase() {
+        buffer.record(1L, 10L, 1_000, 60_000L);
+        buffer.record(1L, 10L, 2_000, 60_000L);
+
+        assertThat(buffer.find(1L, 10L)).get().extracting(PlaybackPosition::getPositionMs).isEqualTo(2_000L);
+        assertThat(pending()).isEqualTo(1);
+    }
+
+    @Test
+    void flushWritesEveryPositionOnceAndEmptiesTheBuffer() {
+        buffer.record(1L, 10L, 1_000, null);
+        buffer.record(1L, 11L, 2_000, null);
+        buffer.record(2L, 10L, 3_000, null);
+
+        buffer.flush();
+
+        assertThat(written.stream().flatMap(List::stream).map(PlaybackPosition::getPositionMs))
+                .containsExactlyInAnyOrder(1_000L, 2_000L, 3_000L);
+        assertThat(pending()).isZero();
+        assertThat(buffer.find(1L, 10L)).isEmpty();
+    }
+
+    @Test
+    void heartbeatArrivingDuringTheFlushStaysBuffered() {
+        buffer.record(1L, 10L, 1_000, null);
+        doAnswer(call -> {
+            written.add(new ArrayList<>(call.<Collection<PlaybackPosition>>getArgument(1)));
+            // a newer heartbeat while the batch is being written
+            buffer.record(1L, 10L, 5_000, null);
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+
+        buffer.flush();
+
+        assertThat(written).singleElement().satisfies(batch ->
+                assertThat(batch).extracting(PlaybackPosition::getPositionMs).containsExactly(1_000L));
+        assertThat(buffer.find(1L, 10L)).get().extracting(PlaybackPosition::getPositionMs).isEqualTo(5_000L);
+        assertThat(pending()).isEqualTo(1);
+
+        written.clear();
+        writesSucceed();
+        buffer.flush();
+
+        assertThat(written).singleElement().satisfies(batch ->
+                assertThat(batch).extracting(PlaybackPosition::getPositionMs).containsExactly(5_000L));
+        assertThat(pending()).isZero();
+    }
+
+    @Test
+    void failedFlushKeepsTheBufferForTheNextOne() {
+        buffer.record(1L, 10L, 1_000, null);
+        doThrow(new QueryTimeoutException("timeout"))
+                .when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+
+        buffer.flush();
+
+        assertThat(buffer.find(1L, 10L)).isPresent();
+        assertThat(pending()).isEqualTo(1);
+
+        writesSucceed();
+        buffer.flush();
+
+        assertThat(written).hasSize(1);
+        assertThat(pending()).isZero();
+    }
+
+    @Test
+    void fullBufferDropsNewVideosButKeepsUpdatingBufferedOnes() {
+        assertThat(buffer.record(1L, 10L, 1_000, null)).isTrue();
+        assertThat(buffer.record(1L, 11L, 1_000, null)).isTrue();
+        assertThat(buffer.record(2L, 10L, 1_000, null)).isTrue();
+
+        assertThat(buffer.record(3L, 10L, 1_000, null)).isFalse();
+        assertThat(buffer.record(1L, 10L, 9_000, null)).isTrue();
+
+        assertThat(pending()).isEqualTo(3);
+        assertThat(meterRegistry.get("playback.heartbeats.dropped").counter().count()).isEqualTo(1);
+        assertThat(buffer.find(3L, 10L)).isEmpty();
+        assertThat(buffer.find(1L, 10L)).get().extracting(PlaybackPosition::getPositionMs).isEqualTo(9_000L);
+
+        // a flush makes room again
+        buffer.flush();
+        assertThat(buffer.record(3L, 10L, 1_000, null)).isTrue();
+    }
+
+    private void writesSucceed() {
+        doAnswer(call -> {
+            written.add(new ArrayList<>(call.<Collection<PlaybackPosition>>getArgument(1)));
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    private double pending() {
+        return meterRegistry.get("playback.positions.pending").gauge().value();
+    }
+}
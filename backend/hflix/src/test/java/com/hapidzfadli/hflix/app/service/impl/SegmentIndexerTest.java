@@ -0,0 +1,196 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hapidzfadli.hflix.app.service.SegmentIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentIndexerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SegmentIndexer indexer = new SegmentIndexer(objectMapper);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsVideoSampleEntry() throws IOException {
+        byte[] init = initSegment(avc1(1280, 720, 0x64, 0x00, 0x1f));
+        writeTrack("video_720p", init, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:5000@" + init.length);
+
+        SegmentIndex.Track track = indexer.index(dir, 4).tracks().get(0);
+
+        assertThat(track.type()).isEqualTo(SegmentIndex.Type.VIDEO);
+        assertThat(track.width()).isEqualTo(1280);
+        assertThat(track.height()).isEqualTo(720);
+        assertThat(track.codecs()).isEqualTo("avc1.64001f");
+        assertThat(track.init()).isEqualTo(new SegmentIndex.ByteRange(0, init.length));
+    }
+
+    @Test
+    void readsAudioSampleEntry() throws IOException {
+        // AudioSpecificConfig 0x28: object type 5 (HE-AAC)
+        byte[] init = initSegment(mp4a(2, 48_000, 0x28));
+        writeTrack("audio", init, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:1000@" + init.length);
+
+        SegmentIndex.Track track = indexer.index(dir, 4).tracks().get(0);
+
+        assertThat(track.type()).isEqualTo(SegmentIndex.Type.AUDIO);
+        assertThat(track.channels()).isEqualTo(2);
+        assertThat(track.sampleRate()).isEqualTo(48_000);
+        assertThat(track.codecs()).isEqualTo("mp4a.40.5");
+        assertThat(track.width()).isNull();
+    }
+
+    @Test
+    void followsImplicitOffsetsAndSkipsShortSegmentsForThePeak() throws IOException {
+        byte[] init = initSegment(mp4a(2, 44_100, 0x10));
+        writeTrack("audio", init,
+                "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:1000@" + init.length,
+                "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:3000",
+                "#EXTINF:0.500000,", "#EXT-X-BYTERANGE:800");
+
+        SegmentIndex.Track track = indexer.index(dir, 8.5).tracks().get(0);
+
+        assertThat(track.codecs()).isEqualTo("mp4a.40.2");
+        assertThat(track.segments()).containsExactly(
+                new SegmentIndex.Segment(4, init.length, 1000),
+                new SegmentIndex.Segment(4, init.length + 1000, 3000),
+                new SegmentIndex.Segment(0.5, init.length + 4000, 800));
+        // the 0.5s tail alone would be 12800 bit/s
+        assertThat(track.bandwidth()).isEqualTo(6000);
+        assertThat(track.averageBandwidth()).isEqualTo((long) Math.ceil(4800 * 8 / 8.5));
+    }
+
+    @Test
+    void sortsVideoByHeightBeforeAudioAndReplacesThePlaylists() throws IOException {
+        byte[] audio = initSegment(mp4a(2, 48_000, 0x10));
+        byte[] high = initSegment(avc1(1280, 720, 0x64, 0x00, 0x1f));
+        byte[] low = initSegment(avc1(640, 360, 0x42, 0xc0, 0x1e));
+        writeTrack("audio", audio, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:1000@" + audio.length);
+        writeTrack("video_720p", high, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:5000@" + high.length);
+        writeTrack("video_360p", low, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:2000@" + low.length);
+
+        SegmentIndex index = indexer.index(dir, 4);
+
+        assertThat(index.tracks()).extracting(SegmentIndex.Track::name)
+                .containsExactly("video_360p", "video_720p", "audio");
+        assertThat(index.tracks().get(0).codecs()).isEqualTo("avc1.42c01e");
+        assertThat(objectMapper.readValue(dir.resolve(SegmentIndex.FILE_NAME).toFile(), SegmentIndex.class))
+                .isEqualTo(index);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .noneMatch(name -> name.endsWith(".m3u8"));
+        }
+    }
+
+    @Test
+    void rejectsPlaylistsWithoutByteRanges() throws IOException {
+        Files.writeString(dir.resolve("video_720p.m3u8"), String.join("\n",
+                "#EXTM3U", "#EXT-X-MAP:URI=\"init.mp4\"", "#EXTINF:4.000000,", "segment0.m4s"));
+
+        assertThatThrownBy(() -> indexer.index(dir, 4))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("not a single-file playlist");
+    }
+
+    @Test
+    void rejectsInitSegmentsWithoutSupportedEntry() throws IOException {
+        byte[] init = initSegment(box("hvc1", new byte[78]));
+        writeTrack("video_720p", init, "#EXTINF:4.000000,", "#EXT-X-BYTERANGE:5000@" + init.length);
+
+        assertThatThrownBy(() -> indexer.index(dir, 4))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("No supported sample entry");
+    }
+
+    /**
+     * Writes {@code <name>.mp4}, the init segment followed by zeroed media, and its
+     * single-file playlist.
+     */
+    private void writeTrack(String name, byte[] init, String... entries) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(init);
+        file.write(new byte[8192]);
+        Files.write(dir.resolve(name + ".mp4"), file.toByteArray());
+
+        List<String> lines = new ArrayList<>(List.of("#EXTM3U", "#EXT-X-VERSION:7",
+                "#EXT-X-TARGETDURATION:4", "#EXT-X-MEDIA-SEQUENCE:0", "#EXT-X-PLAYLIST-TYPE:VOD",
+                "#EXT-X-MAP:URI=\"" + name + ".mp4\",BYTERANGE=\"" + init.length + "@0\""));
+        for (String entry : entries) {
+            lines.add(entry);
+            if (entry.startsWith("#EXT-X-BYTERANGE:")) {
+                lines.add(name + ".mp4");
+            }
+        }
+        lines.add("#EXT-X-ENDLIST");
+        Files.write(dir.resolve(name + ".m3u8"), lines, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] initSegment(byte[] sampleEntry) {
+        // full box header, then an entry count of one
+        byte[] stsd = box("stsd", new byte[] {0, 0, 0, 0, 0, 0, 0, 1}, sampleEntry);
+        byte[] moov = box("moov", box("trak", box("mdia", box("minf", box("stbl", stsd)))));
+        return concat(box("ftyp", "iso6".getBytes(StandardCharsets.US_ASCII), new byte[4]), moov);
+    }
+
+    private static byte[] avc1(int width, int height, int profile, int compatibility, int level) {
+        ByteBuffer entry = ByteBuffer.allocate(78);
+        entry.putShort(6, (short) 1);
+        entry.putShort(24, (short) width);
+        entry.putShort(26, (short) height);
+        byte[] avcC = box("avcC", new byte[] {1, (byte) profile, (byte) compatibility, (byte) level, (byte) 0xff});
+        // avcC is not the first child, ffmpeg may write others before it
+        return box("avc1", entry.array(), box("pasp", new byte[8]), avcC);
+    }
+
+    private static byte[] mp4a(int channels, int sampleRate, int audioSpecificConfig) {
+        ByteBuffer entry = ByteBuffer.allocate(28);
+        entry.putShort(6, (short) 1);
+        entry.putShort(16, (short) channels);
+        entry.putShort(18, (short) 16);
+        entry.putInt(24, sampleRate << 16);
+        byte[] decoderSpecificInfo = descriptor(5, new byte[] {(byte) audioSpecificConfig, 0});
+        byte[] decoderConfig = descriptor(4, concat(new byte[13], decoderSpecificInfo));
+        byte[] es = descriptor(3, concat(new byte[] {0, 1, 0}, decoderConfig));
+        return box("mp4a", entry.array(), box("esds", new byte[4], es));
+    }
+
+    // lengths in the four-byte form ffmpeg writes
+    private static byte[] descriptor(int tag, byte[] body) {
+        int length = body.length;
+        return concat(new byte[] {(byte) tag, (byte) (0x80 | (length >> 21) & 0x7f),
+                (byte) (0x80 | (length >> 14) & 0x7f), (byte) (0x80 | (length >> 7) & 0x7f),
+                (byte) (length & 0x7f)}, body);
+    }
+
+    private static byte[] box(String type, byte[]... bodies) {
+        byte[] body = concat(bodies);
+        return ByteBuffer.allocate(8 + body.length)
+                .putInt(8 + body.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII))
+                .put(body)
+                .array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
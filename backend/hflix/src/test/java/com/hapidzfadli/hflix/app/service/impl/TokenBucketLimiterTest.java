@@ -0,0 +1,86 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000 * SECOND);
+    private final TokenBucketLimiter limiter = new TokenBucketLimiter(3, Duration.ofSeconds(1), 1_000, now::get);
+
+    @Test
+    void allowsTheBurstThenReportsTheWaitForTheNextToken() {
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+
+        assertThat(limiter.tryAcquire("a")).isEqualTo(SECOND);
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() {
+        drain("a");
+
+        now.addAndGet(SECOND);
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isEqualTo(SECOND);
+    }
+
+    @Test
+    void waitShrinksAsTimePasses() {
+        drain("a");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertThat(limiter.tryAcquire("a")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    @Test
+    void rejectedAttemptsDoNotTakeTokens() {
+        drain("a");
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("a");
+        }
+
+        now.addAndGet(SECOND);
+        assertThat(limiter.tryAcquire("a")).isZero();
+    }
+
+    @Test
+    void idleBucketRefillsToCapacityButNotBeyond() {
+        drain("a");
+
+        now.addAndGet(60 * SECOND);
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isEqualTo(SECOND);
+    }
+
+    @Test
+    void keysHaveIndependentBuckets() {
+        drain("a");
+
+        assertThat(limiter.tryAcquire("b")).isZero();
+    }
+
+    @Test
+    void capacityOfOneAllowsNoBurst() {
+        TokenBucketLimiter single = new TokenBucketLimiter(1, Duration.ofSeconds(12), 1_000, now::get);
+
+        assertThat(single.tryAcquire("a")).isZero();
+        assertThat(single.tryAcquire("a")).isEqualTo(12 * SECOND);
+    }
+
+    private void drain(String key) {
+        while (limiter.tryAcquire(key) == 0) {
+            // take the whole burst
+        }
+    }
+}
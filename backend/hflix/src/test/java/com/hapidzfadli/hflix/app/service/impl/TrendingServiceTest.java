@@ -0,0 +1,99 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.TrendingVideo;
+import com.hapidzfadli.hflix.config.TrendingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrendingServiceTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000 * SECOND);
+    private final TrendingService trending;
+
+    TrendingServiceTest() {
+        // four buckets of one second
+        TrendingProperties properties = new TrendingProperties();
+        properties.setWindow(Duration.ofSeconds(4));
+        properties.setBuckets(4);
+        properties.setSize(2);
+        trending = new TrendingService(properties, now::get);
+    }
+
+    @Test
+    void ranksTheMostViewedVideosFirst() {
+        view(1L, 3);
+        view(2L, 5);
+        view(3L, 1);
+
+        trending.refresh();
+
+        assertThat(trending.trending()).containsExactly(new TrendingVideo(2L, 5), new TrendingVideo(1L, 3));
+    }
+
+    @Test
+    void countsViewsAcrossRefreshesWithinTheWindow() {
+        view(1L, 2);
+        trending.refresh();
+        now.addAndGet(SECOND);
+        view(1L, 3);
+        trending.refresh();
+
+        assertThat(trending.trending()).containsExactly(new TrendingVideo(1L, 5));
+    }
+
+    @Test
+    void viewsLeaveTheWindowWithTheirBucket() {
+        view(1L, 5);
+        trending.refresh();
+        now.addAndGet(SECOND);
+        view(2L, 3);
+        trending.refresh();
+
+        // video 1's bucket is retired, video 2's is still in the window
+        now.addAndGet(3 * SECOND);
+        trending.refresh();
+
+        assertThat(trending.trending()).containsExactly(new TrendingVideo(2L, 3));
+    }
+
+    @Test
+    void gapLongerThanTheWindowRetiresEveryBucket() {
+        view(1L, 5);
+        trending.refresh();
+        now.addAndGet(SECOND);
+        view(2L, 3);
+        trending.refresh();
+
+        // many more bucket intervals than there are buckets
+        now.addAndGet(100 * SECOND + SECOND / 2);
+        trending.refresh();
+
+        assertThat(trending.trending()).isEmpty();
+
+        // the bucket clock stays aligned, new views count from zero and expire on time
+        view(3L, 4);
+        trending.refresh();
+        assertThat(trending.trending()).containsExactly(new TrendingVideo(3L, 4));
+
+        now.addAndGet(3 * SECOND);
+        trending.refresh();
+        assertThat(trending.trending()).containsExactly(new TrendingVideo(3L, 4));
+
+        now.addAndGet(SECOND);
+        trending.refresh();
+        assertThat(trending.trending()).isEmpty();
+    }
+
+    private void view(Long videoId, int times) {
+        for (int i = 0; i < times; i++) {
+            trending.record(videoId);
+        }
+    }
+}
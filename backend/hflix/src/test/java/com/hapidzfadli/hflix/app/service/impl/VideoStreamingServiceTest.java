@@ -0,0 +1,156 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.VideoFile;
+import com.hapidzfadli.hflix.config.VideoStreamingProperties;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class VideoStreamingServiceTest {
+
+    private static final long LENGTH = 1000;
+
+    private final VideoStreamingProperties properties = new VideoStreamingProperties();
+    private final VideoStreamingService service;
+
+    VideoStreamingServiceTest() {
+        properties.setChunkSize(100);
+        properties.setMaxRanges(2);
+        service = new VideoStreamingService(properties, mock(StorageService.class), mock(StorageLayout.class),
+                mock(VideoRepository.class), mock(SegmentCache.class), mock(ManifestService.class),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void closedRangeIsClampedToTheFile() {
+        assertThat(service.parseRanges("bytes=0-99", LENGTH)).containsExactly(range(0, 99));
+        assertThat(service.parseRanges("bytes=900-5000", LENGTH)).containsExactly(range(900, 999));
+    }
+
+    @Test
+    void openEndedRangeIsCappedAtTheChunkSize() {
+        assertThat(service.parseRanges("bytes=10-", LENGTH)).containsExactly(range(10, 109));
+        assertThat(service.parseRanges("bytes=950-", LENGTH)).containsExactly(range(950, 999));
+    }
+
+    @Test
+    void suffixRangeCountsFromTheEnd() {
+        assertThat(service.parseRanges("bytes=-100", LENGTH)).containsExactly(range(900, 999));
+        assertThat(service.parseRanges("bytes=-5000", LENGTH)).containsExactly(range(0, 999));
+        assertThat(service.parseRanges("bytes=-0", LENGTH)).isEmpty();
+    }
+
+    @Test
+    void overlappingAndAdjacentRangesAreSortedAndMerged() {
+        assertThat(service.parseRanges("bytes=500-599, 0-9, 10-19, 550-650, 800-899", LENGTH))
+                .containsExactly(range(0, 19), range(500, 650), range(800, 899));
+    }
+
+    @Test
+    void unsatisfiableRangesAreDropped() {
+        assertThat(service.parseRanges("bytes=1000-1100", LENGTH)).isEmpty();
+        assertThat(service.parseRanges("bytes=1000-1100, 0-9", LENGTH)).containsExactly(range(0, 9));
+    }
+
+    @Test
+    void invalidSyntaxSatisfiesNothing() {
+        assertThat(service.parseRanges("bytes=20-10", LENGTH)).isEmpty();
+        assertThat(service.parseRanges("bytes=abc-10", LENGTH)).isEmpty();
+        assertThat(service.parseRanges("bytes=10", LENGTH)).isEmpty();
+    }
+
+    @Test
+    void otherUnitsAreIgnored() {
+        assertThat(service.parseRanges("items=0-9", LENGTH)).isNull();
+    }
+
+    @Test
+    void singleRangeIsSentAsPartialContent() throws IOException {
+        MockHttpServletResponse response = stream("bytes=10-19");
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-19/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(slice(10, 19));
+    }
+
+    @Test
+    void severalRangesAreSentAsMultipart() throws IOException {
+        MockHttpServletResponse response = stream("bytes=0-9, 500-504");
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        String contentType = response.getContentType();
+        assertThat(contentType).startsWith("multipart/byteranges; boundary=");
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\nContent-Type: video/mp4\r\nContent-Range: bytes 0-9/1000\r\n\r\n"
+                + ascii(slice(0, 9))
+                + "\r\n--" + boundary + "\r\nContent-Type: video/mp4\r\nContent-Range: bytes 500-504/1000\r\n\r\n"
+                + ascii(slice(500, 504))
+                + "\r\n--" + boundary + "--\r\n";
+        assertThat(response.getContentAsString(StandardCharsets.ISO_8859_1)).isEqualTo(expected);
+        assertThat(response.getContentLengthLong()).isEqualTo(expected.length());
+    }
+
+    @Test
+    void moreRangesThanAllowedAfterMergingAreRejected() throws IOException {
+        // merges into two ranges, within the limit
+        assertThat(stream("bytes=0-9, 10-19, 500-509").getStatus()).isEqualTo(206);
+
+        MockHttpServletResponse response = stream("bytes=0-9, 100-109, 500-509");
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void unsatisfiableRangeIsRejected() throws IOException {
+        MockHttpServletResponse response = stream("bytes=2000-");
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+    }
+
+    private MockHttpServletResponse stream(String rangeHeader) throws IOException {
+        VideoFile file = new VideoFile("encoded/1/video_360p.mp4", null, ByteBuffer.wrap(content()), null, false,
+                LENGTH, 0, "\"tag\"", "video/mp4");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/videos/1/stream/video_360p.mp4");
+        request.addHeader(HttpHeaders.RANGE, rangeHeader);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.stream(file, System.nanoTime(), request, response);
+        return response;
+    }
+
+    private static VideoStreamingService.Range range(long start, long end) {
+        return new VideoStreamingService.Range(start, end);
+    }
+
+    // printable bytes, so multipart bodies compare as text
+    private static byte[] content() {
+        byte[] content = new byte[(int) LENGTH];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private static byte[] slice(int start, int end) {
+        byte[] slice = new byte[end - start + 1];
+        System.arraycopy(content(), start, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static String ascii(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
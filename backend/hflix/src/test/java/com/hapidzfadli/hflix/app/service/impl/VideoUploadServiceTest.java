@@ -0,0 +1,241 @@
+package com.hapidzfadli.hflix.app.service.impl;
+
+import com.hapidzfadli.hflix.api.exception.UploadException;
+import com.hapidzfadli.hflix.app.service.EncodingQueue;
+import com.hapidzfadli.hflix.app.service.StorageService;
+import com.hapidzfadli.hflix.app.service.UserService;
+import com.hapidzfadli.hflix.config.FfmpegProperties;
+import com.hapidzfadli.hflix.config.IngestProperties;
+import com.hapidzfadli.hflix.config.UploadProperties;
+import com.hapidzfadli.hflix.domain.entity.User;
+import com.hapidzfadli.hflix.domain.entity.VideoUpload;
+import com.hapidzfadli.hflix.domain.repository.VideoRepository;
+import com.hapidzfadli.hflix.domain.repository.VideoUploadRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chunks are written at a non-zero offset, where the ingest tap has nothing to sniff, so
+ * the tests do not depend on content detection.
+ */
+class VideoUploadServiceTest {
+
+    private static final String UPLOAD_ID = "upload-1";
+    private static final String USERNAME = "alice";
+    private static final long OFFSET = 100;
+    private static final long LENGTH = 1000;
+
+    @TempDir
+    Path dir;
+
+    private final VideoUploadRepository uploadRepository = mock(VideoUploadRepository.class);
+    private final UploadProperties properties = new UploadProperties();
+    private VideoUploadService service;
+    private Path staging;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStagingDir(dir.toString());
+        properties.setMaxChunkSize(500);
+        properties.setBufferSize(64);
+
+        staging = dir.resolve(UPLOAD_ID + ".part");
+        try (RandomAccessFile file = new RandomAccessFile(staging.toFile(), "rw")) {
+            file.setLength(LENGTH);
+        }
+        VideoUpload upload = new VideoUpload();
+        upload.setId(UPLOAD_ID);
+        upload.setVideoId(1L);
+        upload.setOwnerId(7L);
+        upload.setUploadLength(LENGTH);
+        upload.setUploadOffset(OFFSET);
+        upload.setStagingPath(staging.toString());
+        when(uploadRepository.findById(UPLOAD_ID)).thenReturn(Optional.of(upload));
+        // compare-and-set like the real query
+        when(uploadRepository.advanceOffset(anyString(), anyLong(), anyLong())).thenAnswer(call -> {
+            if (upload.getUploadOffset() != call.<Long>getArgument(1)) {
+                return 0;
+            }
+            upload.setUploadOffset(call.getArgument(2));
+            return 1;
+        });
+
+        User owner = new User();
+        owner.setId(7L);
+        UserService userService = mock(UserService.class);
+        when(userService.findByUsername(USERNAME)).thenReturn(Optional.of(owner));
+
+        VideoIngestService ingestService = new VideoIngestService(new IngestProperties(), mock(StorageService.class),
+                new FfmpegProperties());
+        service = new VideoUploadService(uploadRepository, mock(VideoRepository.class), userService,
+                mock(StorageService.class), mock(StorageLayout.class), ingestService, mock(EncodingQueue.class),
+                properties, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    void writesTheChunkAtItsOffsetAndAdvances() throws IOException {
+        byte[] chunk = bytes(300);
+
+        long offset = service.writeChunk(UPLOAD_ID, USERNAME, OFFSET, chunk.length, null,
+                new ByteArrayInputStream(chunk));
+
+        assertThat(offset).isEqualTo(OFFSET + 300);
+        assertThat(Arrays.copyOfRange(Files.readAllBytes(staging), (int) OFFSET, (int) OFFSET + 300)).isEqualTo(chunk);
+        verify(uploadRepository).advanceOffset(UPLOAD_ID, OFFSET, OFFSET + 300);
+    }
+
+    @Test
+    void rejectsAChunkAtAnotherOffset() {
+        assertThatThrownBy(() -> write(OFFSET + 1, bytes(10), null))
+                .isInstanceOfSatisfying(UploadException.class, e -> {
+                    assertThat(e.getStatus()).isEqualTo(HttpStatus.CONFLICT);
+                    assertThat(e.getOffset()).isEqualTo(OFFSET);
+                });
+    }
+
+    @Test
+    void rejectsADeclaredLengthAboveTheChunkCap() {
+        assertThatThrownBy(() -> service.writeChunk(UPLOAD_ID, USERNAME, OFFSET, 501, null,
+                new ByteArrayInputStream(bytes(501))))
+                .isInstanceOfSatisfying(UploadException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+    }
+
+    @Test
+    void rejectsADeclaredLengthPastTheUpload() {
+        properties.setMaxChunkSize(5000);
+
+        assertThatThrownBy(() -> service.writeChunk(UPLOAD_ID, USERNAME, OFFSET, LENGTH - OFFSET + 1, null,
+                new ByteArrayInputStream(bytes(1))))
+                .isInstanceOfSatisfying(UploadException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    void rejectsABodyOverrunningTheChunkCapWithoutDeclaredLength() {
+        assertThatThrownBy(() -> write(OFFSET, bytes(501), null))
+                .isInstanceOf(UploadException.class)
+                .hasMessageContaining("runs past");
+        verify(uploadRepository, never()).advanceOffset(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void rejectsABodyOverrunningTheUploadLength() {
+        properties.setMaxChunkSize(5000);
+
+        assertThatThrownBy(() -> write(OFFSET, bytes((int) (LENGTH - OFFSET) + 1), null))
+                .isInstanceOf(UploadException.class)
+                .hasMessageContaining("runs past");
+        verify(uploadRepository, never()).advanceOffset(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void acceptsAMatchingChecksum() throws Exception {
+        byte[] chunk = bytes(200);
+
+        assertThat(write(OFFSET, chunk, "sha256 " + digest("SHA-256", chunk))).isEqualTo(OFFSET + 200);
+        assertThat(write(OFFSET + 200, chunk, "md5 " + digest("MD5", chunk))).isEqualTo(OFFSET + 400);
+    }
+
+    @Test
+    void rejectsAMismatchingChecksumWithoutAdvancing() throws Exception {
+        byte[] chunk = bytes(200);
+        String checksum = "sha1 " + digest("SHA-1", bytes(199));
+
+        assertThatThrownBy(() -> write(OFFSET, chunk, checksum))
+                .isInstanceOfSatisfying(UploadException.class, e -> {
+                    assertThat(e.getStatus().value()).isEqualTo(460);
+                    assertThat(e.getOffset()).isEqualTo(OFFSET);
+                });
+        verify(uploadRepository, never()).advanceOffset(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void rejectsMalformedChecksumHeaders() {
+        assertThatThrownBy(() -> write(OFFSET, bytes(10), "crc32 AAAA"))
+                .isInstanceOf(UploadException.class)
+                .hasMessageContaining("Unsupported checksum algorithm");
+        assertThatThrownBy(() -> write(OFFSET, bytes(10), "sha256"))
+                .isInstanceOf(UploadException.class)
+                .hasMessageContaining("needs an algorithm and a digest");
+        assertThatThrownBy(() -> write(OFFSET, bytes(10), "sha256 not*base64"))
+                .isInstanceOf(UploadException.class)
+                .hasMessageContaining("not valid base64");
+    }
+
+    @Test
+    void keepsThePartialChunkOfADroppedConnection() {
+        assertThatThrownBy(() -> service.writeChunk(UPLOAD_ID, USERNAME, OFFSET, 300, null, dropsAfter(bytes(120))))
+                .isInstanceOf(IOException.class);
+
+        verify(uploadRepository).advanceOffset(UPLOAD_ID, OFFSET, OFFSET + 120);
+    }
+
+    @Test
+    void dropsThePartialChunkWhenItHadAChecksum() throws Exception {
+        String checksum = "sha256 " + digest("SHA-256", bytes(300));
+
+        assertThatThrownBy(() -> service.writeChunk(UPLOAD_ID, USERNAME, OFFSET, 300, checksum,
+                dropsAfter(bytes(120))))
+                .isInstanceOf(IOException.class);
+
+        verify(uploadRepository, never()).advanceOffset(anyString(), anyLong(), anyLong());
+    }
+
+    private long write(long offset, byte[] chunk, String checksum) throws IOException {
+        // -1: no Content-Length, the body is bounded by the copy itself
+        return service.writeChunk(UPLOAD_ID, USERNAME, offset, -1, checksum, new ByteArrayInputStream(chunk));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static String digest(String algorithm, byte[] bytes) throws NoSuchAlgorithmException {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance(algorithm).digest(bytes));
+    }
+
+    // a body whose connection breaks after the given bytes
+    private static InputStream dropsAfter(byte[] bytes) {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= bytes.length) {
+                    throw new IOException("Connection reset");
+                }
+                return bytes[position++] & 0xff;
+            }
+        };
+    }
+}